@@ -3,6 +3,7 @@ package Debug;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import javax.imageio.ImageIO;
 
@@ -31,8 +32,9 @@ public final class DebugMain2 {
       System.out.println("+--------------------+");
       for (int y = 0; y < 18; ++y) {
         System.out.print("|");
+        ByteBuffer row = gb.memoryView().slice(0x9800 + 32*y, 20);
         for (int x = 0; x < 20; ++x) {
-      char c = (char) gb.bus().read(0x9800 + 32*y + x);
+      char c = (char) Byte.toUnsignedInt(row.get(x));
       System.out.print(Character.isISOControl(c) ? " " : c);
         }
         System.out.println("|");
@@ -6,6 +6,8 @@ public interface AddressMap {
 
     int BOOT_ROM_START = 0x0000, BOOT_ROM_END = 0x0100,
             BOOT_ROM_SIZE = BOOT_ROM_END - BOOT_ROM_START;
+    int CARTRIDGE_ROM_START = 0x0000, CARTRIDGE_ROM_END = 0x8000;
+    int CARTRIDGE_RAM_START = 0xA000, CARTRIDGE_RAM_END = 0xC000;
     int VIDEO_RAM_START = 0x8000, VIDEO_RAM_END = 0xA000,
             VIDEO_RAM_SIZE = VIDEO_RAM_END - VIDEO_RAM_START;
     int WORK_RAM_START = 0xC000, WORK_RAM_END = 0xE000,
@@ -29,7 +31,12 @@ public interface AddressMap {
     int REG_TMA = 0xFF06;
     int REG_TAC = 0xFF07;
     int REG_IF = 0xFF0F;
+    int REGS_AUDIO_START = 0xFF10;
+    int WAVE_RAM_START = 0xFF30, WAVE_RAM_END = 0xFF40,
+            WAVE_RAM_SIZE = WAVE_RAM_END - WAVE_RAM_START;
     int REGS_LCDC_START = 0xFF40, REGS_LCDC_END = 0xFF4C;
+    int REG_STAT = 0xFF41;
+    int REG_LY = 0xFF44;
     int REG_BOOT_ROM_DISABLE = 0xFF50;
     int REG_IE = 0xFFFF;
 }
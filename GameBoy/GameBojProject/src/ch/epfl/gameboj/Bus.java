@@ -1,6 +1,7 @@
 package ch.epfl.gameboj;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Objects;
 
 import ch.epfl.gameboj.component.Component;
@@ -16,8 +17,41 @@ import ch.epfl.gameboj.component.Component;
 public final class Bus {
     
     private static final int DEFAULT_READ = 255;
+    private static final byte NO_OWNER = -1;
 
     private final ArrayList<Component> listOfComponent = new ArrayList<Component>();
+    private long[] readCounts = new long[0];
+    private long[] writeCounts = new long[0];
+    private long writeCount = 0;
+    private final byte[] writeOwners = newWriteOwners();
+    private AccessHook accessHook = null;
+
+    /**
+     * Interface d'un observateur des accès au bus (cf. setAccessHook)
+     *
+     */
+    public interface AccessHook {
+
+        /**
+         * Methode appelée après chaque lecture sur le bus
+         * 
+         * @param address
+         *            l'adresse lue
+         * @param value
+         *            la valeur retournée
+         */
+        public abstract void onRead(int address, int value);
+
+        /**
+         * Methode appelée avant chaque écriture sur le bus
+         * 
+         * @param address
+         *            l'adresse écrite
+         * @param value
+         *            la valeur écrite
+         */
+        public abstract void onWrite(int address, int value);
+    }
 
     /**
      * attache le composant donné au bus, ou lève l'exception
@@ -31,6 +65,8 @@ public final class Bus {
         Objects.requireNonNull(component);
 
         listOfComponent.add(component);
+        readCounts = Arrays.copyOf(readCounts, listOfComponent.size());
+        writeCounts = Arrays.copyOf(writeCounts, listOfComponent.size());
     }
 
     /**
@@ -48,10 +84,17 @@ public final class Bus {
         for (int i = 0; i < listOfComponent.size(); ++i) {
             dataValue = listOfComponent.get(i).read(address);
             if (dataValue != Component.NO_DATA) {
+                readCounts[i] += 1;
+                if (accessHook != null) {
+                    accessHook.onRead(address, dataValue);
+                }
                 return dataValue;
             }
         }
 
+        if (accessHook != null) {
+            accessHook.onRead(address, DEFAULT_READ);
+        }
         return DEFAULT_READ;
     }
 
@@ -68,10 +111,146 @@ public final class Bus {
         
         Preconditions.checkBits16(address);
         Preconditions.checkBits8(data);
+        writeCount += 1;
+        int owner = writeOwners[address];
+        if (owner != NO_OWNER) {
+            writeCounts[owner] += 1;
+        }
+        if (accessHook != null) {
+            accessHook.onWrite(address, data);
+        }
         for (int i = 0; i < listOfComponent.size(); ++i) {
             listOfComponent.get(i).write(address, data);
         }
 
     }
 
+    /**
+     * Attribue au composant donné, déjà attaché, les écritures faites sur le
+     * bus entre les adresses start (incluse) et end (exclue), pour les
+     * compter (cf. writeCount(int)). Les écritures aux adresses attribuées à
+     * aucun composant ne sont comptées que dans le total
+     * 
+     * @param component
+     *            le composant
+     * @param start
+     *            la première adresse de la plage
+     * @param end
+     *            l'adresse qui suit la dernière de la plage
+     * @throws IllegalArgumentException
+     *             si le composant n'est pas attaché au bus ou si la plage
+     *             n'est pas valide
+     */
+    public void attributeWrites(Component component, int start, int end) {
+        int index = listOfComponent.indexOf(component);
+        Preconditions.checkArgument(index >= 0);
+        Preconditions.checkArgument(
+                0 <= start && start <= end && end <= writeOwners.length);
+        Arrays.fill(writeOwners, start, end, (byte) index);
+    }
+
+    private static byte[] newWriteOwners() {
+        byte[] owners = new byte[1 << 16];
+        Arrays.fill(owners, NO_OWNER);
+        return owners;
+    }
+
+    /**
+     * Methode qui lit la valeur à l'adresse donnée comme read, mais sans
+     * compter l'accès ni prévenir l'observateur (cf. setAccessHook) : pour
+     * examiner la mémoire depuis un débogueur
+     * 
+     * @param address
+     *            l'adresse à lire
+     * @return la valeur lue, ou 0xFF si aucun composant n'y répond
+     */
+    public int peek(int address) {
+        Preconditions.checkBits16(address);
+        for (Component c : listOfComponent) {
+            int dataValue = c.read(address);
+            if (dataValue != Component.NO_DATA) {
+                return dataValue;
+            }
+        }
+        return DEFAULT_READ;
+    }
+
+    /**
+     * Methode qui écrit la valeur à l'adresse donnée comme write, mais sans
+     * compter l'accès ni prévenir l'observateur : pour modifier la mémoire
+     * depuis un débogueur
+     * 
+     * @param address
+     *            l'adresse à écrire
+     * @param data
+     *            la valeur à écrire
+     */
+    public void poke(int address, int data) {
+        Preconditions.checkBits16(address);
+        Preconditions.checkBits8(data);
+        for (Component c : listOfComponent) {
+            c.write(address, data);
+        }
+    }
+
+    /**
+     * Attache un observateur appelé à chaque lecture et écriture sur le bus,
+     * ou le détache si l'observateur donné est null (un seul test par accès
+     * dans ce cas). Les copies DMA directes et les instructions déjà décodées
+     * (cf. Cpu.setCodeSource) ne passent pas par le bus
+     * 
+     * @param hook
+     *            l'observateur, ou null
+     */
+    public void setAccessHook(AccessHook hook) {
+        this.accessHook = hook;
+    }
+
+    /**
+     * 
+     * @return le nombre de composants attachés au bus
+     */
+    public int componentCount() {
+        return listOfComponent.size();
+    }
+
+    /**
+     * 
+     * @param index
+     *            l'index du composant (dans l'ordre d'attachement)
+     * @return le composant attaché à cet index
+     */
+    public Component component(int index) {
+        return listOfComponent.get(index);
+    }
+
+    /**
+     * 
+     * @param index
+     *            l'index du composant (dans l'ordre d'attachement)
+     * @return le nombre de lectures auxquelles ce composant a répondu
+     */
+    public long readCount(int index) {
+        return readCounts[index];
+    }
+
+    /**
+     * 
+     * @param index
+     *            l'index du composant (dans l'ordre d'attachement)
+     * @return le nombre d'écritures faites dans les plages attribuées à ce
+     *         composant (cf. attributeWrites)
+     */
+    public long writeCount(int index) {
+        return writeCounts[index];
+    }
+
+    /**
+     * 
+     * @return le nombre total d'écritures faites sur le bus
+     */
+    public long writeCount() {
+        return writeCount;
+    }
+
 }
@@ -1,8 +1,12 @@
 package ch.epfl.gameboj;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
 import java.util.Objects;
 
 import ch.epfl.gameboj.component.Joypad;
+import ch.epfl.gameboj.component.Stateful;
 import ch.epfl.gameboj.component.Timer;
 import ch.epfl.gameboj.component.cartridge.Cartridge;
 import ch.epfl.gameboj.component.cpu.Cpu;
@@ -10,6 +14,8 @@ import ch.epfl.gameboj.component.lcd.LcdController;
 import ch.epfl.gameboj.component.memory.BootRomController;
 import ch.epfl.gameboj.component.memory.Ram;
 import ch.epfl.gameboj.component.memory.RamController;
+import ch.epfl.gameboj.component.sound.Apu;
+import ch.epfl.gameboj.jfr.RunUntilSlice;
 
 /**
  * 
@@ -18,9 +24,10 @@ import ch.epfl.gameboj.component.memory.RamController;
  * @author Auguste Lefevre (269821) et Marc Watine (269508)
  *
  */
-public final class GameBoy {
+public final class GameBoy implements Stateful {
 
-    private final static long CYCLE_BY_SECOND = (long) 1 << 20;
+    final static long CYCLE_BY_SECOND = (long) 1 << 20;
+    private final static int INITIAL_STATE_CAPACITY = 1 << 16;
     
     // Public because used in Main
     public final static double CYCLE_BY_NANO = (float)(CYCLE_BY_SECOND) / (double)1e9  ;
@@ -31,41 +38,92 @@ public final class GameBoy {
     private final Timer timer;
     private final LcdController lcdController;
     private final Joypad joypad;
+    private final Apu apu;
+    private final Ram workRam;
+    private final MemoryView memoryView;
+    private final Metrics metrics = new Metrics();
     
     private long totalCycle;
+    private long runLimit;
 
     /**
      * Constructeur de la gameboy, a ce stade (étape6) il construit un Bus, un
      * Cpu, un Timer, un lcdController, un Joypad, une BootRomController et une workRam ainsi que sa copie
-     * (echoRam). Il attache les différents composants au bus.
+     * (echoRam), puis l'Apu. Il attache les différents composants au bus.
      * 
      * @param cartridge
      *            la cartouche qui va etre lu par la gameboy
      */
     public GameBoy(Cartridge cartridge) {
         Objects.requireNonNull(cartridge);
+        cartridge.setCycleSource(this::cycles);
         this.bus = new Bus();
         this.cpu = new Cpu();
         this.timer = new Timer(cpu);
         this.bootRom = new BootRomController(cartridge);
         this.lcdController = new LcdController(cpu);
         this.joypad = new Joypad(cpu);
+        this.apu = new Apu(this::cycles);
 
-        Ram workRam = new Ram(AddressMap.WORK_RAM_SIZE);
+        this.workRam = new Ram(AddressMap.WORK_RAM_SIZE);
         RamController workRamController = new RamController(workRam,
                 AddressMap.WORK_RAM_START, AddressMap.WORK_RAM_END);
         RamController echoRamController = new RamController(workRam,
                 AddressMap.ECHO_RAM_START, AddressMap.ECHO_RAM_END);
 
         cpu.attachTo(bus);
+        cpu.setCodeSource(bootRom);
+        cpu.setFusedPairs(EnumSet.allOf(Cpu.FusedPair.class));
+        cpu.setEventHorizon(() -> nextEventCycle(runLimit));
         bootRom.attachTo(bus);
         timer.attachTo(bus);
         lcdController.attachTo(bus);
+        lcdController.attachDmaSource(workRamController);
+        lcdController.attachDmaSource(echoRamController);
         joypad.attachTo(bus);
         workRamController.attachTo(bus);
         echoRamController.attachTo(bus);
+        apu.attachTo(bus);
+        attributeWrites(workRamController, echoRamController);
+
+        memoryView = new MemoryView(lcdController.videoRamView(),
+                workRam.asReadOnlyBuffer(), lcdController.oamView(),
+                cpu.highRamView(), cartridge.ramView());
 
         totalCycle = 0;
+        lcdController.addFrameEndListener(this::publishMetrics);
+    }
+
+    /**
+     * Attribue à chaque composant les plages d'adresses du bus qu'il gère,
+     * pour compter les écritures par composant (cf. Metrics)
+     */
+    private void attributeWrites(RamController workRamController,
+            RamController echoRamController) {
+        bus.attributeWrites(cpu, AddressMap.HIGH_RAM_START,
+                AddressMap.HIGH_RAM_END);
+        bus.attributeWrites(cpu, AddressMap.REG_IF, AddressMap.REG_IF + 1);
+        bus.attributeWrites(cpu, AddressMap.REG_IE, AddressMap.REG_IE + 1);
+        bus.attributeWrites(bootRom, AddressMap.CARTRIDGE_ROM_START,
+                AddressMap.CARTRIDGE_ROM_END);
+        bus.attributeWrites(bootRom, AddressMap.CARTRIDGE_RAM_START,
+                AddressMap.CARTRIDGE_RAM_END);
+        bus.attributeWrites(bootRom, AddressMap.REG_BOOT_ROM_DISABLE,
+                AddressMap.REG_BOOT_ROM_DISABLE + 1);
+        bus.attributeWrites(timer, AddressMap.REG_DIV, AddressMap.REG_TAC + 1);
+        bus.attributeWrites(lcdController, AddressMap.VIDEO_RAM_START,
+                AddressMap.VIDEO_RAM_END);
+        bus.attributeWrites(lcdController, AddressMap.OAM_START,
+                AddressMap.OAM_END);
+        bus.attributeWrites(lcdController, AddressMap.REGS_LCDC_START,
+                AddressMap.REGS_LCDC_END);
+        bus.attributeWrites(joypad, AddressMap.REG_P1, AddressMap.REG_P1 + 1);
+        bus.attributeWrites(workRamController, AddressMap.WORK_RAM_START,
+                AddressMap.WORK_RAM_END);
+        bus.attributeWrites(echoRamController, AddressMap.ECHO_RAM_START,
+                AddressMap.ECHO_RAM_END);
+        bus.attributeWrites(apu, AddressMap.REGS_AUDIO_START,
+                AddressMap.WAVE_RAM_END);
     }
 
     /**
@@ -108,6 +166,32 @@ public final class GameBoy {
         return this.joypad;
     }
 
+    /**
+     * 
+     * @return l'Apu de la Gameboy
+     */
+    public Apu apu() {
+        return this.apu;
+    }
+
+    /**
+     * 
+     * @return la vue en lecture seule, sans passer par le Bus, des mémoires
+     *         vives de la Gameboy
+     */
+    public MemoryView memoryView() {
+        return this.memoryView;
+    }
+
+    /**
+     * 
+     * @return les métriques de la Gameboy, lisibles depuis n'importe quel fil
+     *         d'exécution
+     */
+    public Metrics metrics() {
+        return this.metrics;
+    }
+
     /**
      * Methode qui simule le fonctionnement du GameBoy jusqu'au cycle donné
      * moins 1, ou lève l'exception IllegalArgumentException si un nombre
@@ -119,14 +203,208 @@ public final class GameBoy {
      */
     public void runUntil(long cycle) {
         Preconditions.checkArgument(cycles() <= cycle);
-        
-        while (totalCycle < cycle) {
-            timer.cycle(totalCycle);
-            lcdController.cycle(totalCycle);
-            cpu.cycle(totalCycle);
-            this.totalCycle += 1;
+        RunUntilSlice event = new RunUntilSlice();
+        event.begin();
+        long startCycle = totalCycle;
+        this.runLimit = cycle;
+
+        while (totalCycle < runLimit) {
+            advance(runLimit);
         }
+        apu.update(totalCycle);
+        publishMetrics();
 
+        event.end();
+        if (event.shouldCommit()) {
+            event.startCycle = startCycle;
+            event.endCycle = totalCycle;
+            event.commit();
+        }
+    }
+
+    /**
+     * Methode qui simule le fonctionnement du GameBoy jusqu'à ce que le
+     * LcdController ait terminé n nouvelles images. Si l'écran est éteint,
+     * la simulation s'arrête après l'équivalent de n+1 images en cycles
+     * 
+     * @param n
+     *            le nombre d'images à produire
+     */
+    public void runFrames(int n) {
+        Preconditions.checkArgument(n >= 0);
+        long targetFrame = lcdController.frameCount() + n;
+        this.runLimit = totalCycle + (n + 1L) * LcdController.IMAGE_DRAW;
+
+        while (lcdController.frameCount() < targetFrame
+                && totalCycle < runLimit) {
+            advance(runLimit);
+        }
+        apu.update(totalCycle);
+        publishMetrics();
+    }
+
+    /**
+     * Methode qui arrête la simulation en cours (runUntil ou runFrames) au
+     * cycle donné, ou au cycle suivant s'il est déjà atteint : elle ne
+     * dépassera pas ce cycle (exclu). A appeler pendant la simulation, par
+     * exemple depuis un observateur du Cpu ou du Bus ; sans effet sur les
+     * simulations suivantes
+     * 
+     * @param cycle
+     *            le cycle auquel s'arrêter
+     */
+    public void stopAt(long cycle) {
+        runLimit = Math.min(runLimit, Math.max(cycle, totalCycle + 1));
+    }
+
+    /**
+     * Methode qui publie les compteurs des composants dans les métriques
+     */
+    private void publishMetrics() {
+        metrics.publish(totalCycle, lcdController.frameCount(), bus,
+                lcdController.dmaTransfers(), cpu.interruptsRequested(),
+                cpu.interruptsServiced());
+    }
+
+    /**
+     * Methode qui simule au moins un cycle et au plus jusqu'au cycle limit
+     * (exclu). Si le processeur est arrêté (HALT) ou tourne dans une boucle
+     * d'attente active sur LY/STAT, la simulation saute directement au
+     * premier cycle auquel une interruption peut être levée ou LY/STAT
+     * changer : prochain évènement du LcdController ou prochain débordement
+     * du Timer (le Joypad ne lève d'interruption qu'entre deux appels à
+     * runUntil)
+     * 
+     * @param limit
+     *            le cycle à ne pas dépasser
+     */
+    private void advance(long limit) {
+        if (cpu.isHalted()) {
+            long next = nextEventCycle(limit);
+            if (next > totalCycle) {
+                skip(next - totalCycle);
+                return;
+            }
+        } else if (cpu.idleLoopPeriod() != 0) {
+            long skipped = cpu.skipIdleLoop(lcdController.lastEventCycle(),
+                    nextEventCycle(limit));
+            if (skipped > 0) {
+                skip(skipped);
+                return;
+            }
+        }
+        step();
+    }
+
+    /**
+     * Methode qui retourne le premier cycle auquel le LcdController ou le
+     * Timer a quelque chose à faire (ou limit s'il est plus petit)
+     * 
+     * @param limit
+     *            le cycle à ne pas dépasser
+     * @return le prochain cycle actif
+     */
+    private long nextEventCycle(long limit) {
+        long next = Math.min(limit, lcdController.nextEventCycle());
+        long overflow = timer.cyclesUntilOverflow();
+        if (overflow != Long.MAX_VALUE) {
+            next = Math.min(next, totalCycle + overflow - 1);
+        }
+        return next;
+    }
+
+    /**
+     * Methode qui saute le nombre de cycles donné, pendant lesquels seul le
+     * Timer évolue
+     * 
+     * @param cycles
+     *            le nombre de cycles à sauter
+     */
+    private void skip(long cycles) {
+        timer.advance(cycles);
+        this.totalCycle += cycles;
+    }
+
+    /**
+     * Methode qui simule un seul cycle de tous les composants pilotés par
+     * l'horloge
+     */
+    private void step() {
+        timer.cycle(totalCycle);
+        lcdController.cycle(totalCycle);
+        cpu.cycle(totalCycle);
+        this.totalCycle += 1;
+    }
+
+    /**
+     * Écrit l'état complet de la GameBoy : nombre de cycles simulés, Cpu,
+     * Timer, LcdController, Joypad, Apu, workRam, mémoire de démarrage et
+     * cartouche
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.putLong(totalCycle);
+        cpu.saveState(buffer);
+        timer.saveState(buffer);
+        lcdController.saveState(buffer);
+        joypad.saveState(buffer);
+        apu.saveState(buffer);
+        workRam.copyTo(0, buffer, workRam.size());
+        bootRom.saveState(buffer);
+    }
+
+    /**
+     * Restaure l'état écrit par saveState, par une GameBoy construite avec
+     * la même cartouche (ou une cartouche de la même rom) : la simulation
+     * reprend alors exactement comme elle se serait poursuivie après
+     * saveState
+     */
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        totalCycle = buffer.getLong();
+        cpu.loadState(buffer);
+        timer.loadState(buffer);
+        lcdController.loadState(buffer);
+        joypad.loadState(buffer);
+        apu.loadState(buffer);
+        workRam.copyFrom(buffer, 0, workRam.size());
+        bootRom.loadState(buffer);
+        publishMetrics();
+    }
+
+    /**
+     * Methode qui capture l'état actuel de la GameBoy (cf. saveState)
+     * 
+     * @return l'état capturé, qui peut être restauré autant de fois que
+     *         voulu
+     */
+    public Snapshot snapshot() {
+        int capacity = INITIAL_STATE_CAPACITY;
+        while (true) {
+            ByteBuffer buffer = ByteBuffer.allocate(capacity);
+            try {
+                saveState(buffer);
+            } catch (BufferOverflowException e) {
+                capacity *= 2;
+                continue;
+            }
+            byte[] state = new byte[buffer.position()];
+            buffer.flip().get(state);
+            return new Snapshot(state, totalCycle);
+        }
+    }
+
+    /**
+     * Methode qui restaure un état capturé par snapshot (cf. loadState)
+     * 
+     * @param snapshot
+     *            l'état à restaurer
+     */
+    public void restore(Snapshot snapshot) {
+        Objects.requireNonNull(snapshot);
+        ByteBuffer buffer = ByteBuffer.wrap(snapshot.state);
+        loadState(buffer);
+        Preconditions.checkArgument(!buffer.hasRemaining());
     }
 
     /**
@@ -138,4 +416,34 @@ public final class GameBoy {
         return totalCycle;
     }
 
-}
\ No newline at end of file
+    /**
+     * Classe imbriquée représentant un état capturé de la GameBoy, immuable
+     *
+     */
+    public static final class Snapshot {
+        private final byte[] state;
+        private final long cycles;
+
+        private Snapshot(byte[] state, long cycles) {
+            this.state = state;
+            this.cycles = cycles;
+        }
+
+        /**
+         * 
+         * @return le nombre de cycles simulés au moment de la capture
+         */
+        public long cycles() {
+            return cycles;
+        }
+
+        /**
+         * 
+         * @return la taille de l'état en octets
+         */
+        public int size() {
+            return state.length;
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+package ch.epfl.gameboj;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Classe qui donne accès en lecture seule, sans passer par le Bus et sans
+ * copie, aux mémoires vives d'une GameBoy : ramVideo, workRam (et echoRam),
+ * mémoire OAM, mémoire haute et mémoire vive de la cartouche. Chaque mémoire
+ * est vue à travers un ByteBuffer qui partage son contenu (les écritures de la
+ * simulation y sont visibles) : lire plusieurs kilo-octets par image ne coûte
+ * qu'une copie d'un bloc (ByteBuffer.put).
+ *
+ * Les valeurs lues sont celles des mémoires, pas celles que le Bus
+ * retournerait : la mémoire OAM reste lisible pendant une copie DMA. La
+ * mémoire vive de la cartouche, dont la banque visible dépend du contrôleur,
+ * n'est accessible que d'un bloc (cf. cartridgeRam).
+ *
+ * Les méthodes peuvent être appelées depuis n'importe quel fil d'exécution,
+ * mais une lecture concurrente à la simulation peut voir une image à moitié
+ * mise à jour.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+public final class MemoryView {
+
+    private final ByteBuffer videoRam;
+    private final ByteBuffer workRam;
+    private final ByteBuffer oam;
+    private final ByteBuffer highRam;
+    private final ByteBuffer cartridgeRam;
+
+    /**
+     * Construit une vue des mémoires données (vues en lecture seule de leur
+     * contenu, cf. Ram.asReadOnlyBuffer)
+     */
+    MemoryView(ByteBuffer videoRam, ByteBuffer workRam, ByteBuffer oam,
+            ByteBuffer highRam, ByteBuffer cartridgeRam) {
+        this.videoRam = Objects.requireNonNull(videoRam);
+        this.workRam = Objects.requireNonNull(workRam);
+        this.oam = Objects.requireNonNull(oam);
+        this.highRam = Objects.requireNonNull(highRam);
+        this.cartridgeRam = Objects.requireNonNull(cartridgeRam);
+    }
+
+    /**
+     * @return une vue de la ramVideo (0x8000 à 0x9FFF), de position 0
+     */
+    public ByteBuffer videoRam() {
+        return videoRam.duplicate();
+    }
+
+    /**
+     * @return une vue de la workRam (0xC000 à 0xDFFF), de position 0
+     */
+    public ByteBuffer workRam() {
+        return workRam.duplicate();
+    }
+
+    /**
+     * @return une vue de la mémoire OAM (0xFE00 à 0xFE9F), de position 0
+     */
+    public ByteBuffer oam() {
+        return oam.duplicate();
+    }
+
+    /**
+     * @return une vue de la mémoire haute (0xFF80 à 0xFFFE), de position 0
+     */
+    public ByteBuffer highRam() {
+        return highRam.duplicate();
+    }
+
+    /**
+     * @return une vue de toute la mémoire vive de la cartouche (toutes les
+     *         banques, dans l'ordre ; vide s'il n'y en a pas), de position 0
+     */
+    public ByteBuffer cartridgeRam() {
+        return cartridgeRam.duplicate();
+    }
+
+    /**
+     * Methode qui indique si l'adresse donnée se trouve dans une des mémoires
+     * visibles par adresse (ramVideo, workRam, echoRam, OAM, mémoire haute)
+     *
+     * @param address
+     *            l'adresse (16 bits)
+     * @return vrai ssi l'adresse peut être lue par read et slice
+     */
+    public boolean isMapped(int address) {
+        return region(address) != null;
+    }
+
+    /**
+     * Methode qui lit l'octet à l'adresse donnée directement dans sa mémoire
+     *
+     * @param address
+     *            l'adresse de l'octet
+     * @return sa valeur (8 bits)
+     * @throws IllegalArgumentException
+     *             si l'adresse n'est pas visible (cf. isMapped)
+     */
+    public int read(int address) {
+        ByteBuffer region = mappedRegion(address);
+        return Byte.toUnsignedInt(region.get(address - start(address)));
+    }
+
+    /**
+     * Methode qui retourne une vue, sans copie, des length octets à partir de
+     * l'adresse donnée, qui doivent tous se trouver dans la même mémoire
+     *
+     * @param address
+     *            l'adresse du premier octet
+     * @param length
+     *            le nombre d'octets
+     * @return une vue de ces octets, de position 0 et de capacité length
+     * @throws IllegalArgumentException
+     *             si l'adresse n'est pas visible
+     * @throws IndexOutOfBoundsException
+     *             si la plage dépasse de la zone contenant l'adresse (l'echoRam
+     *             est plus courte que la workRam)
+     */
+    public ByteBuffer slice(int address, int length) {
+        ByteBuffer region = mappedRegion(address);
+        int index = address - start(address);
+        Objects.checkFromIndexSize(index, length,
+                end(address) - start(address));
+        return region.slice(index, length);
+    }
+
+    private ByteBuffer mappedRegion(int address) {
+        ByteBuffer region = region(address);
+        Preconditions.checkArgument(region != null);
+        return region;
+    }
+
+    private ByteBuffer region(int address) {
+        if (address >= AddressMap.VIDEO_RAM_START
+                && address < AddressMap.VIDEO_RAM_END) {
+            return videoRam;
+        } else if (address >= AddressMap.WORK_RAM_START
+                && address < AddressMap.ECHO_RAM_END) {
+            return workRam;
+        } else if (address >= AddressMap.OAM_START
+                && address < AddressMap.OAM_END) {
+            return oam;
+        } else if (address >= AddressMap.HIGH_RAM_START
+                && address < AddressMap.HIGH_RAM_END) {
+            return highRam;
+        }
+        return null;
+    }
+
+    private static int start(int address) {
+        if (address < AddressMap.VIDEO_RAM_END) {
+            return AddressMap.VIDEO_RAM_START;
+        } else if (address < AddressMap.WORK_RAM_END) {
+            return AddressMap.WORK_RAM_START;
+        } else if (address < AddressMap.ECHO_RAM_END) {
+            return AddressMap.ECHO_RAM_START;
+        } else if (address < AddressMap.OAM_END) {
+            return AddressMap.OAM_START;
+        }
+        return AddressMap.HIGH_RAM_START;
+    }
+
+    private static int end(int address) {
+        if (address < AddressMap.VIDEO_RAM_END) {
+            return AddressMap.VIDEO_RAM_END;
+        } else if (address < AddressMap.WORK_RAM_END) {
+            return AddressMap.WORK_RAM_END;
+        } else if (address < AddressMap.ECHO_RAM_END) {
+            return AddressMap.ECHO_RAM_END;
+        } else if (address < AddressMap.OAM_END) {
+            return AddressMap.OAM_END;
+        }
+        return AddressMap.HIGH_RAM_END;
+    }
+
+}
@@ -0,0 +1,320 @@
+package ch.epfl.gameboj;
+
+import java.io.PrintStream;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import ch.epfl.gameboj.component.cpu.Cpu.Interrupt;
+
+/**
+ * Classe qui regroupe les compteurs de la GameBoy (cycles, images, opérations
+ * du bus, interruptions, copies DMA). Les compteurs sont mis à jour par le fil
+ * d'exécution de la GameBoy (à chaque image terminée et à la fin de chaque
+ * appel à runUntil) et peuvent être lus sans verrou depuis n'importe quel
+ * autre fil.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+public final class Metrics {
+
+    private static final double NANO_BY_SECOND = 1e9;
+    private static final Interrupt[] INTERRUPTS = Interrupt.values();
+
+    private final AtomicLong cycles = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong busWrites = new AtomicLong();
+    private final AtomicLong dmaTransfers = new AtomicLong();
+    private final AtomicLongArray interruptsRequested = new AtomicLongArray(
+            INTERRUPTS.length);
+    private final AtomicLongArray interruptsServiced = new AtomicLongArray(
+            INTERRUPTS.length);
+    private volatile AtomicLongArray busReads = new AtomicLongArray(0);
+    private volatile AtomicLongArray componentWrites = new AtomicLongArray(0);
+    private volatile String[] componentNames = new String[0];
+
+    /**
+     * Constructeur visible uniquement depuis le paquetage, les métriques
+     * sont créées par la GameBoy
+     */
+    Metrics() {
+    }
+
+    /**
+     * Publie les valeurs des compteurs (appelée par la GameBoy sur son propre
+     * fil d'exécution)
+     */
+    void publish(long cycles, long frames, Bus bus, long dmaTransfers,
+            long[] requested, long[] serviced) {
+        int components = bus.componentCount();
+        if (busReads.length() != components) {
+            String[] names = new String[components];
+            for (int i = 0; i < components; ++i) {
+                names[i] = bus.component(i).getClass().getSimpleName();
+            }
+            componentNames = names;
+            busReads = new AtomicLongArray(components);
+            componentWrites = new AtomicLongArray(components);
+        }
+        AtomicLongArray reads = busReads;
+        AtomicLongArray writes = componentWrites;
+        for (int i = 0; i < components; ++i) {
+            reads.lazySet(i, bus.readCount(i));
+            writes.lazySet(i, bus.writeCount(i));
+        }
+        for (int i = 0; i < INTERRUPTS.length; ++i) {
+            interruptsRequested.lazySet(i, requested[i]);
+            interruptsServiced.lazySet(i, serviced[i]);
+        }
+        this.busWrites.lazySet(bus.writeCount());
+        this.dmaTransfers.lazySet(dmaTransfers);
+        this.frames.lazySet(frames);
+        this.cycles.lazySet(cycles);
+    }
+
+    /**
+     *
+     * @return le nombre de cycles simulés
+     */
+    public long cycles() {
+        return cycles.get();
+    }
+
+    /**
+     *
+     * @return le nombre d'images terminées par le LcdController
+     */
+    public long frames() {
+        return frames.get();
+    }
+
+    /**
+     *
+     * @return le nombre de composants attachés au bus
+     */
+    public int componentCount() {
+        return busReads.length();
+    }
+
+    /**
+     *
+     * @param component
+     *            l'index du composant (dans l'ordre d'attachement au bus)
+     * @return le nom de la classe du composant
+     */
+    public String componentName(int component) {
+        return componentNames[component];
+    }
+
+    /**
+     *
+     * @param component
+     *            l'index du composant (dans l'ordre d'attachement au bus)
+     * @return le nombre de lectures du bus auxquelles ce composant a répondu
+     */
+    public long busReads(int component) {
+        return busReads.get(component);
+    }
+
+    /**
+     *
+     * @return le nombre total de lectures du bus
+     */
+    public long busReads() {
+        AtomicLongArray reads = busReads;
+        long total = 0;
+        for (int i = 0; i < reads.length(); ++i) {
+            total += reads.get(i);
+        }
+        return total;
+    }
+
+    /**
+     *
+     * @param component
+     *            l'index du composant (dans l'ordre d'attachement au bus)
+     * @return le nombre d'écritures du bus attribuées à ce composant (cf.
+     *         Bus.writeCount(int))
+     */
+    public long busWrites(int component) {
+        return componentWrites.get(component);
+    }
+
+    /**
+     *
+     * @return le nombre total d'écritures sur le bus
+     */
+    public long busWrites() {
+        return busWrites.get();
+    }
+
+    /**
+     *
+     * @return le nombre de copies DMA vers la mémoire OAM
+     */
+    public long dmaTransfers() {
+        return dmaTransfers.get();
+    }
+
+    /**
+     *
+     * @param i
+     *            l'interruption voulue
+     * @return le nombre de fois où cette interruption a été levée
+     */
+    public long interruptsRequested(Interrupt i) {
+        return interruptsRequested.get(i.index());
+    }
+
+    /**
+     *
+     * @param i
+     *            l'interruption voulue
+     * @return le nombre de fois où le Cpu a traité cette interruption
+     */
+    public long interruptsServiced(Interrupt i) {
+        return interruptsServiced.get(i.index());
+    }
+
+    /**
+     * Retourne un relevé des compteurs à l'instant présent
+     *
+     * @return le relevé
+     */
+    public Sample sample() {
+        long requested = 0;
+        long serviced = 0;
+        for (int i = 0; i < INTERRUPTS.length; ++i) {
+            requested += interruptsRequested.get(i);
+            serviced += interruptsServiced.get(i);
+        }
+        return new Sample(System.nanoTime(), cycles(), frames(), busReads(),
+                busWrites(), dmaTransfers(), requested, serviced);
+    }
+
+    /**
+     * Retourne une tâche qui, à chaque exécution, écrit sur la sortie donnée
+     * une ligne décrivant les débits depuis l'exécution précédente. Destinée
+     * à être planifiée périodiquement (par ex. avec un
+     * ScheduledExecutorService) par les programmes sans interface graphique
+     *
+     * @param out
+     *            la sortie sur laquelle écrire
+     * @return la tâche de journalisation
+     */
+    public Runnable logger(PrintStream out) {
+        Objects.requireNonNull(out);
+        Sample[] previous = new Sample[] { sample() };
+        return () -> {
+            Sample now = sample();
+            out.println(now.describe(previous[0]));
+            previous[0] = now;
+        };
+    }
+
+    /**
+     * Classe représentant un relevé des compteurs à un instant donné, qui
+     * permet de calculer les débits entre deux relevés
+     */
+    public static final class Sample {
+
+        public final long nanoTime;
+        public final long cycles;
+        public final long frames;
+        public final long busReads;
+        public final long busWrites;
+        public final long dmaTransfers;
+        public final long interruptsRequested;
+        public final long interruptsServiced;
+
+        private Sample(long nanoTime, long cycles, long frames, long busReads,
+                long busWrites, long dmaTransfers, long interruptsRequested,
+                long interruptsServiced) {
+            this.nanoTime = nanoTime;
+            this.cycles = cycles;
+            this.frames = frames;
+            this.busReads = busReads;
+            this.busWrites = busWrites;
+            this.dmaTransfers = dmaTransfers;
+            this.interruptsRequested = interruptsRequested;
+            this.interruptsServiced = interruptsServiced;
+        }
+
+        /**
+         *
+         * @param previous
+         *            un relevé antérieur
+         * @return le nombre de cycles simulés par seconde depuis ce relevé
+         */
+        public double cyclesPerSecond(Sample previous) {
+            return rate(cycles - previous.cycles, previous);
+        }
+
+        /**
+         *
+         * @param previous
+         *            un relevé antérieur
+         * @return la vitesse de simulation depuis ce relevé, en multiple du
+         *         temps réel (1 = temps réel)
+         */
+        public double speed(Sample previous) {
+            return cyclesPerSecond(previous) / GameBoy.CYCLE_BY_SECOND;
+        }
+
+        /**
+         *
+         * @param previous
+         *            un relevé antérieur
+         * @return le nombre d'images produites par seconde depuis ce relevé
+         */
+        public double framesPerSecond(Sample previous) {
+            return rate(frames - previous.frames, previous);
+        }
+
+        /**
+         *
+         * @param previous
+         *            un relevé antérieur
+         * @return le nombre de lectures et écritures du bus par seconde
+         *         depuis ce relevé
+         */
+        public double busOpsPerSecond(Sample previous) {
+            return rate(busReads - previous.busReads + busWrites
+                    - previous.busWrites, previous);
+        }
+
+        /**
+         *
+         * @param previous
+         *            un relevé antérieur
+         * @return le nombre d'interruptions traitées par seconde depuis ce
+         *         relevé
+         */
+        public double interruptsPerSecond(Sample previous) {
+            return rate(interruptsServiced - previous.interruptsServiced,
+                    previous);
+        }
+
+        /**
+         *
+         * @param previous
+         *            un relevé antérieur
+         * @return une ligne résumant les débits depuis ce relevé
+         */
+        public String describe(Sample previous) {
+            return String.format(
+                    "%.3f MHz (x%.2f), %.1f fps, %.0f bus ops/s, %.0f int/s, %d DMA",
+                    cyclesPerSecond(previous) / 1e6, speed(previous),
+                    framesPerSecond(previous), busOpsPerSecond(previous),
+                    interruptsPerSecond(previous),
+                    dmaTransfers - previous.dmaTransfers);
+        }
+
+        private double rate(long delta, Sample previous) {
+            long elapsed = nanoTime - previous.nanoTime;
+            return elapsed <= 0 ? 0 : delta * NANO_BY_SECOND / elapsed;
+        }
+    }
+
+}
@@ -1,11 +1,13 @@
 package ch.epfl.gameboj;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Objects;
 
 import ch.epfl.gameboj.bits.Bit;
 import ch.epfl.gameboj.bits.Bits;
+import ch.epfl.gameboj.component.Stateful;
 
 /**
  * Classe générique représentant un banc de registre 8bits.
@@ -15,7 +17,7 @@ import ch.epfl.gameboj.bits.Bits;
  * @param <E>
  *            représente le type du banc
  */
-public final class RegisterFile<E extends Register> {
+public final class RegisterFile<E extends Register> implements Stateful {
 
     private final int[] banc;
 
@@ -111,4 +113,22 @@ public final class RegisterFile<E extends Register> {
         set(reg, valueRegister);
     }
 
+    /**
+     * Écrit la valeur de chaque registre (un octet par registre, dans l'ordre
+     * des index)
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        for (int value : banc) {
+            buffer.put((byte) value);
+        }
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        for (int i = 0; i < banc.length; ++i) {
+            banc[i] = Byte.toUnsignedInt(buffer.get());
+        }
+    }
+
 }
@@ -1,5 +1,6 @@
 package ch.epfl.gameboj.bits;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Objects;
 
@@ -131,6 +132,36 @@ public final class BitVector {
                 index % Integer.SIZE);
     }
 
+    /**
+     * Methode qui écrit les size() / 32 entiers du vecteur dans le tampon
+     * donné, à partir de sa position courante
+     * 
+     * @param buffer
+     *            le tampon dans lequel écrire
+     */
+    public void writeTo(ByteBuffer buffer) {
+        for (int v : vector) {
+            buffer.putInt(v);
+        }
+    }
+
+    /**
+     * Methode qui lit un vecteur de la taille donnée écrit par writeTo
+     * 
+     * @param buffer
+     *            le tampon à lire, à partir de sa position courante
+     * @param size
+     *            la taille du vecteur (multiple de 32)
+     * @return le vecteur lu
+     */
+    public static BitVector readFrom(ByteBuffer buffer, int size) {
+        int[] v = vectorCreator(size, false);
+        for (int i = 0; i < v.length; ++i) {
+            v[i] = buffer.getInt();
+        }
+        return new BitVector(v);
+    }
+
     /**
      * Methode qui renvoie le complément du vecteur de base
      * 
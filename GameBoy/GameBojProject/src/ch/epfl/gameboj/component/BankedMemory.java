@@ -0,0 +1,38 @@
+package ch.epfl.gameboj.component;
+
+/**
+ * Interface qui représente un composant dont la mémoire morte (0x0000 à
+ * 0x7FFF) est découpée en banques de 16 Ko, dont le contenu ne change pas tant
+ * que la banque visible ne change pas. Permet au processeur de mettre en cache
+ * les instructions décodées
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ *
+ */
+public interface BankedMemory extends Component {
+
+    public static final int BANK_SIZE = 0x4000;
+
+    /**
+     * Methode qui retourne le numéro de la banque visible dans la zone de 16
+     * Ko contenant l'adresse donnée, ou -1 si le contenu de cette zone peut
+     * changer sans changement de banque (ou si elle ne contient pas de mémoire
+     * morte)
+     *
+     * @param address
+     *            une adresse de la zone voulue
+     * @return le numéro de la banque visible, ou -1
+     */
+    public abstract int bank(int address);
+
+    /**
+     * Methode qui enregistre l'action à exécuter après chaque changement de
+     * banque (remplace la précédente, null pour n'en avoir aucune)
+     *
+     * @param listener
+     *            l'action à exécuter, ou null
+     */
+    public abstract void setBankListener(Runnable listener);
+
+}
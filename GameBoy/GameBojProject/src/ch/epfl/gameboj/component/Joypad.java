@@ -1,6 +1,10 @@
 package ch.epfl.gameboj.component;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.function.BiConsumer;
 
 import ch.epfl.gameboj.AddressMap;
 import ch.epfl.gameboj.Preconditions;
@@ -9,13 +13,14 @@ import ch.epfl.gameboj.bits.Bits;
 import ch.epfl.gameboj.component.cpu.Cpu;
 import ch.epfl.gameboj.component.cpu.Cpu.Interrupt;
 
-public final class Joypad implements Component {
+public final class Joypad implements Component, Stateful {
 
     private final Cpu cpu;
 
     private int P1 = 0;
     private int line0 = 0;
     private int line1 = 0;
+    private final List<BiConsumer<Key, Boolean>> keyListeners = new ArrayList<>();
 
     private static final int LENGTH = 4;
 
@@ -79,6 +84,7 @@ public final class Joypad implements Component {
         }
         cpu.requestInterrupt(Interrupt.JOYPAD); // TODO
         majP1(); // TODO
+        notifyKeyListeners(k, true);
     }
 
     /**
@@ -94,6 +100,63 @@ public final class Joypad implements Component {
             line1 = Bits.set(line1, k.ordinal() % LENGTH, false);
         }
         majP1();
+        notifyKeyListeners(k, false);
+    }
+
+    /**
+     * Méthode indiquant si une touche est pressée
+     * 
+     * @param k
+     *            la touche
+     * @return vrai ssi la touche est pressée
+     */
+    public boolean isPressed(Key k) {
+        int line = k.ordinal() < LENGTH ? line0 : line1;
+        return Bits.test(line, k.ordinal() % LENGTH);
+    }
+
+    /**
+     * Écrit P1 et l'état des touches des deux lignes (les auditeurs ne sont
+     * pas appelés lors de la restauration)
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.put((byte) P1).put((byte) line0).put((byte) line1);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        P1 = Byte.toUnsignedInt(buffer.get());
+        line0 = Byte.toUnsignedInt(buffer.get());
+        line1 = Byte.toUnsignedInt(buffer.get());
+    }
+
+    /**
+     * Ajoute un auditeur appelé après chaque appel à keyPressed (avec vrai) ou
+     * keyReleased (avec faux), même si l'état de la touche ne change pas
+     * 
+     * @param listener
+     *            l'auditeur à appeler
+     */
+    public void addKeyListener(BiConsumer<Key, Boolean> listener) {
+        Objects.requireNonNull(listener);
+        keyListeners.add(listener);
+    }
+
+    /**
+     * Retire un auditeur ajouté avec addKeyListener
+     * 
+     * @param listener
+     *            l'auditeur à retirer
+     */
+    public void removeKeyListener(BiConsumer<Key, Boolean> listener) {
+        keyListeners.remove(listener);
+    }
+
+    private void notifyKeyListeners(Key k, boolean pressed) {
+        for (int i = 0; i < keyListeners.size(); ++i) {
+            keyListeners.get(i).accept(k, pressed);
+        }
     }
 
     /**
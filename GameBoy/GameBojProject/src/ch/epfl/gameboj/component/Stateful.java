@@ -0,0 +1,40 @@
+package ch.epfl.gameboj.component;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Interface qui représente un objet dont l'état peut être écrit dans un
+ * tampon puis restauré tel quel (cf. GameBoy.snapshot). Seul l'état simulé est
+ * concerné : la configuration (auditeurs, traceurs, saut d'images, etc.) et
+ * les statistiques ne sont ni écrites ni restaurées.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ *
+ */
+public interface Stateful {
+
+    /**
+     * Methode qui écrit l'état de l'objet dans le tampon donné, à partir de sa
+     * position courante (qui avance d'autant)
+     *
+     * @param buffer
+     *            le tampon dans lequel écrire
+     * @throws java.nio.BufferOverflowException
+     *             si le tampon est trop petit
+     */
+    public abstract void saveState(ByteBuffer buffer);
+
+    /**
+     * Methode qui restaure l'état écrit par saveState (par un objet construit
+     * de la même manière) depuis le tampon donné, à partir de sa position
+     * courante (qui avance d'autant)
+     *
+     * @param buffer
+     *            le tampon à lire
+     * @throws java.nio.BufferUnderflowException
+     *             si le tampon est trop court
+     */
+    public abstract void loadState(ByteBuffer buffer);
+
+}
@@ -1,5 +1,6 @@
 package ch.epfl.gameboj.component;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 import ch.epfl.gameboj.AddressMap;
@@ -14,7 +15,7 @@ import ch.epfl.gameboj.component.cpu.Cpu.Interrupt;
  * @author Auguste Lefevre (269821) Marc Watine (269508)
  *
  */
-public final class Timer implements Component, Clocked {
+public final class Timer implements Component, Clocked, Stateful {
 
     private final Cpu cpu;
     private int counterPrincipal;
@@ -22,6 +23,7 @@ public final class Timer implements Component, Clocked {
     private int TMA;
     private int TAC;
     private static final int INCREMENT_TIMA_CONDITION = 0xFF;
+    private static final int COUNTER_INCREMENT = 4;
 
     /**
      * Constructeur qui construit un minuteur associé au processeur donné, ou
@@ -47,6 +49,23 @@ public final class Timer implements Component, Clocked {
         incIfChange(previousState);
     }
 
+    /**
+     * Écrit le compteur principal, TIMA, TMA et TAC
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.putShort((short) counterPrincipal).put((byte) TIMA)
+                .put((byte) TMA).put((byte) TAC);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        counterPrincipal = Short.toUnsignedInt(buffer.getShort());
+        TIMA = Byte.toUnsignedInt(buffer.get());
+        TMA = Byte.toUnsignedInt(buffer.get());
+        TAC = Byte.toUnsignedInt(buffer.get());
+    }
+
     @Override
     public int read(int address) {
         Preconditions.checkBits16(address);
@@ -98,6 +117,43 @@ public final class Timer implements Component, Clocked {
 
     }
 
+    /**
+     * Methode qui retourne le nombre d'appels à cycle nécessaires pour que
+     * TIMA déborde (c-à-d que l'interruption TIMER soit levée), en supposant
+     * que TAC, TIMA et DIV ne soient pas modifiés d'ici là
+     * 
+     * @return le nombre de cycles (au moins 1) avant le prochain débordement,
+     *         ou Long.MAX_VALUE si le minuteur est désactivé
+     */
+    public long cyclesUntilOverflow() {
+        if (!Bits.test(TAC, 2)) {
+            return Long.MAX_VALUE;
+        }
+        long period = 1L << (counterBitIndex() + 1);
+        long edgesNeeded = INCREMENT_TIMA_CONDITION + 1 - TIMA;
+        long target = (counterPrincipal / period + edgesNeeded) * period;
+        return (target - counterPrincipal) / COUNTER_INCREMENT;
+    }
+
+    /**
+     * Methode qui fait évoluer le minuteur du nombre de cycles donné d'un seul
+     * coup, comme le feraient autant d'appels à cycle ; le nombre de cycles
+     * doit être strictement inférieur à cyclesUntilOverflow()
+     * 
+     * @param cycles
+     *            le nombre de cycles à simuler
+     */
+    public void advance(long cycles) {
+        Preconditions.checkArgument(
+                cycles >= 0 && cycles < cyclesUntilOverflow());
+        long counter = counterPrincipal + cycles * COUNTER_INCREMENT;
+        if (Bits.test(TAC, 2)) {
+            long period = 1L << (counterBitIndex() + 1);
+            TIMA += (int) (counter / period - counterPrincipal / period);
+        }
+        counterPrincipal = (int) (counter & 0xFFFF);
+    }
+
     /**
      * Methode retournant ce que nous avons appelé l'état du minuteur, c à d la
      * conjonction logique du bit 2 du registre TAC et du bit du compteur
@@ -107,6 +163,19 @@ public final class Timer implements Component, Clocked {
      */
     private boolean state() {
         boolean activation = Bits.test(TAC, 2);
+        boolean principal = Bits.test(this.counterPrincipal,
+                counterBitIndex());
+
+        return activation && principal;
+    }
+
+    /**
+     * Methode retournant l'index du bit du compteur principal désigné par les
+     * 2 bits de poids faible du registre TAC
+     * 
+     * @return l'index du bit observé
+     */
+    private int counterBitIndex() {
         int indexBitCounterPrincipal = Integer.MAX_VALUE; // To put somethings
 
         switch (Bits.clip(2, TAC)) {
@@ -128,10 +197,7 @@ public final class Timer implements Component, Clocked {
             break;
         }
 
-        boolean principal = Bits.test(this.counterPrincipal,
-                indexBitCounterPrincipal);
-
-        return activation && principal;
+        return indexBitCounterPrincipal;
     }
 
     /**
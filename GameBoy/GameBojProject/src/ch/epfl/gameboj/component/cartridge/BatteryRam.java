@@ -0,0 +1,289 @@
+package ch.epfl.gameboj.component.cartridge;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ch.epfl.gameboj.Preconditions;
+import ch.epfl.gameboj.component.memory.Ram;
+import ch.epfl.gameboj.jfr.SaveRamFlush;
+
+/**
+ * Classe qui sauvegarde la mémoire vive d'une cartouche à pile dans un fichier
+ * (.sav). Le fichier est lu (projeté en mémoire) à la création ; ensuite,
+ * chaque écriture dans la mémoire marque sa page comme modifiée, et un fil
+ * d'exécution en arrière-plan écrit au plus toutes les N secondes les pages
+ * modifiées (regroupées en blocs contigus) puis force leur écriture sur le
+ * disque. Les pages modifiées sont aussi écrites à la fermeture et à l'arrêt
+ * de la machine virtuelle. Après un premier échec, signalé une seule fois, les
+ * écritures en arrière-plan s'arrêtent et tout le contenu est réécrit à la
+ * fermeture (qui lève l'exception si cette dernière tentative échoue aussi).
+ *
+ * Si la cartouche a une horloge temps réel, son état (cf. Rtc) est écrit dans
+ * le même fichier, juste après la mémoire vive. Il est transmis au fil
+ * d'arrière-plan sous forme de copies immuables, à chaque modification, et
+ * est relevé une dernière fois à la fermeture (et à l'arrêt de la machine
+ * virtuelle), pour garder le temps simulé pendant la session.
+ *
+ * Le fil de la GameBoy ne fait jamais d'entrée/sortie : marquer une page ne
+ * coûte qu'une écriture (lazySet) dans un tableau atomique.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+final class BatteryRam implements Closeable {
+
+    public static final int DEFAULT_FLUSH_PERIOD = 5;
+
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private static final ScheduledExecutorService FLUSHER = Executors
+            .newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "gameboj-save-flusher");
+                t.setDaemon(true);
+                return t;
+            });
+
+    private final Ram ram;
+    private final Rtc rtc;
+    private final AtomicReference<byte[]> pendingRtc = new AtomicReference<>();
+    private final Path file;
+    private final FileChannel channel;
+    private final AtomicIntegerArray dirty;
+    private final ByteBuffer buffer;
+    private final ScheduledFuture<?> task;
+    private final Thread shutdownHook;
+    private boolean closed = false;
+    private IOException error = null;
+
+    /**
+     * Construit la sauvegarde de la mémoire donnée (et de l'horloge donnée)
+     * dans le fichier donné (créé s'il n'existe pas) et charge dans la
+     * mémoire (et l'horloge) le contenu du fichier
+     *
+     * @param ram
+     *            la mémoire vive de la cartouche
+     * @param rtc
+     *            l'horloge temps réel de la cartouche, ou null
+     * @param file
+     *            le fichier de sauvegarde
+     * @param flushPeriod
+     *            le délai (en secondes, strictement positif) entre deux
+     *            écritures des pages modifiées
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie
+     */
+    BatteryRam(Ram ram, Rtc rtc, Path file, int flushPeriod)
+            throws IOException {
+        Preconditions.checkArgument(flushPeriod > 0);
+        this.ram = Objects.requireNonNull(ram);
+        this.rtc = rtc;
+        this.file = Objects.requireNonNull(file);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.dirty = new AtomicIntegerArray(
+                (ram.size() + PAGE_SIZE - 1) / PAGE_SIZE);
+        this.buffer = ByteBuffer.allocateDirect(ram.size());
+
+        int length = (int) Math.min(channel.size(), ram.size());
+        if (length > 0) {
+            MappedByteBuffer saved = channel.map(MapMode.READ_ONLY, 0, length);
+            ram.copyFrom(saved, 0, length);
+        }
+        if (rtc != null) {
+            if (channel.size() >= ram.size() + Rtc.SAVE_SIZE) {
+                rtc.load(channel.map(MapMode.READ_ONLY, ram.size(),
+                        Rtc.SAVE_SIZE));
+            } else {
+                pendingRtc.set(rtc.save());
+            }
+        }
+
+        this.task = FLUSHER.scheduleWithFixedDelay(this::flushInBackground,
+                flushPeriod, flushPeriod, TimeUnit.SECONDS);
+        this.shutdownHook = new Thread(this::flushOnShutdown,
+                "gameboj-save-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Marque comme modifiée la page contenant l'index donné (appelée par le
+     * contrôleur après chaque écriture dans la mémoire)
+     *
+     * @param index
+     *            l'index de l'octet écrit
+     */
+    void markDirty(int index) {
+        dirty.lazySet(index >>> PAGE_BITS, 1);
+    }
+
+    /**
+     * Marque comme modifiées toutes les pages (appelée par le contrôleur
+     * lorsque toute la mémoire est remplacée, cf. Stateful.loadState)
+     */
+    void markAllDirty() {
+        for (int i = 0; i < dirty.length(); ++i) {
+            dirty.set(i, 1);
+        }
+    }
+
+    /**
+     * Transmet un nouvel état de l'horloge à écrire (appelée par le
+     * contrôleur après chaque modification de l'horloge)
+     *
+     * @param snapshot
+     *            l'état de l'horloge au format de sauvegarde (cf. Rtc.save),
+     *            qui ne doit plus être modifié
+     */
+    void markRtcDirty(byte[] snapshot) {
+        pendingRtc.set(snapshot);
+    }
+
+    /**
+     * Écrit dans le fichier toutes les pages modifiées depuis la dernière
+     * écriture, puis force leur écriture sur le disque
+     *
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie
+     */
+    synchronized void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        SaveRamFlush event = new SaveRamFlush();
+        event.begin();
+
+        long written = 0;
+        int pages = dirty.length();
+        int page = 0;
+        while (page < pages) {
+            if (dirty.getAndSet(page, 0) == 0) {
+                page += 1;
+                continue;
+            }
+            int first = page;
+            page += 1;
+            while (page < pages && dirty.getAndSet(page, 0) != 0) {
+                page += 1;
+            }
+
+            int start = first * PAGE_SIZE;
+            int length = Math.min(page * PAGE_SIZE, ram.size()) - start;
+            buffer.clear().limit(length);
+            ram.copyTo(start, buffer, length);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, start + buffer.position());
+            }
+            written += length;
+        }
+
+        byte[] snapshot = pendingRtc.getAndSet(null);
+        if (snapshot != null) {
+            ByteBuffer rtcBuffer = ByteBuffer.wrap(snapshot);
+            try {
+                while (rtcBuffer.hasRemaining()) {
+                    channel.write(rtcBuffer,
+                            ram.size() + rtcBuffer.position());
+                }
+            } catch (IOException e) {
+                pendingRtc.compareAndSet(null, snapshot);
+                throw e;
+            }
+            written += snapshot.length;
+        }
+
+        if (written > 0) {
+            channel.force(false);
+            event.end();
+            if (event.shouldCommit()) {
+                event.path = file.toString();
+                event.bytes = written;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Écrit les pages modifiées (tout le contenu si une écriture en
+     * arrière-plan a échoué) et l'état actuel de l'horloge, arrête les écritures en arrière-plan et ferme
+     * le fichier
+     *
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie lors de cette dernière
+     *             écriture (l'éventuelle erreur précédente lui est jointe)
+     */
+    @Override
+    public void close() throws IOException {
+        task.cancel(false);
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // la machine virtuelle est déjà en train de s'arrêter
+        }
+        synchronized (this) {
+            try {
+                snapshotRtc();
+                flush();
+            } catch (IOException e) {
+                if (error != null && error != e) {
+                    e.addSuppressed(error);
+                }
+                throw e;
+            } finally {
+                closed = true;
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Transmet l'état actuel de l'horloge, qui a avancé avec la simulation
+     * depuis sa dernière modification par le programme : le fichier garde
+     * ainsi le temps simulé de la session, auquel le prochain chargement
+     * n'ajoute que le temps réel écoulé depuis la fermeture
+     */
+    private void snapshotRtc() {
+        if (rtc != null) {
+            pendingRtc.set(rtc.save());
+        }
+    }
+
+    private synchronized void flushInBackground() {
+        if (error != null) {
+            return;
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            // les pages de cette écriture sont perdues : tout le contenu sera
+            // réécrit par close (ou à l'arrêt de la machine virtuelle)
+            error = e;
+            markAllDirty();
+            System.err.println("Unable to write " + file + ": " + e);
+        }
+    }
+
+    private void flushOnShutdown() {
+        try {
+            snapshotRtc();
+            flush();
+        } catch (IOException e) {
+            System.err.println("Unable to write " + file + ": " + e);
+        }
+    }
+
+}
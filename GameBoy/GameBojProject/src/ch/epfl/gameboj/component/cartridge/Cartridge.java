@@ -1,31 +1,48 @@
 package ch.epfl.gameboj.component.cartridge;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.Objects;
+import java.util.function.LongSupplier;
 
 import ch.epfl.gameboj.Preconditions;
-import ch.epfl.gameboj.component.Component;
+import ch.epfl.gameboj.component.BankedMemory;
+import ch.epfl.gameboj.component.Stateful;
+import ch.epfl.gameboj.component.memory.Ram;
 import ch.epfl.gameboj.component.memory.Rom;
+import ch.epfl.gameboj.jfr.RomLoad;
 
 /**
  * 
  * @author Auguste Lefevre (269821) Marw Watine (269508) Classe qui représente
  *         une cartouche.
  */
-public final class Cartridge implements Component {
+public final class Cartridge implements BankedMemory, Stateful, Closeable {
 
-    private final Component cartridgeController;
+    private final BankedMemory cartridgeController;
+    private final Stateful controllerState;
+    private final Ram ram;
+    private BatteryRam battery = null;
+    private MBC3 timedController = null;
 
-    private final static int TYPE_CARTRIDGE = 0x147;
-    private final static int RAM_SIZE = 0x149;
-    private final static int[] RAM_SIZE_TABLE = new int[] { 0, 2048, 8192,
-            32768 };
+    private final static int TYPE_MBC1_RAM_BATTERY = 3;
+    private final static int TYPE_MBC3_TIMER_BATTERY = 0x0F,
+            TYPE_MBC3_TIMER_RAM_BATTERY = 0x10, TYPE_MBC3_RAM_BATTERY = 0x13;
+    private final static int TYPE_MBC5_RAM_BATTERY = 0x1B,
+            TYPE_MBC5_RUMBLE_RAM_BATTERY = 0x1E;
+    private final static String SAVE_EXTENSION = ".sav";
+
+    /**
+     * Délai à passer à ofPath/ofFile pour ne jamais lire ni écrire de
+     * sauvegarde (la mémoire vive à pile part alors de zéro à chaque
+     * chargement, ce qui rend la simulation reproductible)
+     */
+    public final static int NO_SAVE = 0;
 
     /**
      * Constructeur privé construisant une cartouche contenant un contrôleur et
@@ -34,18 +51,24 @@ public final class Cartridge implements Component {
      * @param bankController
      *            controleur de banque mémoire gérant la mémoire morte de la
      *            cartouche
+     * @param ram
+     *            la mémoire vive du contrôleur (vide s'il n'en a pas)
      * 
      */
-    private Cartridge(Component bankController) {
+    private <T extends BankedMemory & Stateful> Cartridge(T bankController,
+            Ram ram) {
         this.cartridgeController = bankController;
+        this.controllerState = bankController;
+        this.ram = ram;
     }
 
     /**
      * Retourne une cartouche dont la mémoire morte contient les octets du
-     * fichier donné (et une ram si la cartouche est une MBC1) ; lève
-     * l'exception IOException en cas d'erreur d'entrée sortie, y compris si le
-     * fichier donné n'existe pas, et l'exception IllegalArgumentException si le
-     * fichier en question ne contient pas 0,1,2 ou 3 à la position 0x147
+     * fichier donné (et une ram si la cartouche est une MBC1, une MBC3 ou une
+     * MBC5) ; lève l'exception IOException en cas d'erreur d'entrée sortie, y
+     * compris si le fichier donné n'existe pas, et l'exception
+     * IllegalArgumentException si le fichier en question ne contient pas un
+     * type géré (0 à 3, 0x0F à 0x13 ou 0x19 à 0x1E) à la position 0x147
      * 
      * @param romFile
      *            Le fichier sur lequel on va lire les octets afin de les placer
@@ -57,38 +80,133 @@ public final class Cartridge implements Component {
      *             est égale a 0
      */
     public static Cartridge ofFile(File romFile) throws IOException {
+        return ofFile(romFile, BatteryRam.DEFAULT_FLUSH_PERIOD);
+    }
+
+    /**
+     * Retourne une cartouche comme ofFile(romFile). Si la cartouche a une
+     * mémoire vive ou une horloge à pile (types 3, 0x0F, 0x10, 0x13, 0x1B et
+     * 0x1E), leur contenu est chargé depuis le fichier de sauvegarde (même nom
+     * que la rom, avec l'extension .sav) puis y est écrit en arrière-plan au
+     * plus toutes les flushPeriod secondes, à la fermeture de la cartouche et
+     * à l'arrêt du programme
+     * 
+     * @param romFile
+     *            Le fichier sur lequel on va lire les octets afin de les placer
+     *            dans la mémoir de la cartouche
+     * @param flushPeriod
+     *            le délai (en secondes) entre deux écritures de la sauvegarde,
+     *            ou NO_SAVE pour ne pas utiliser de sauvegarde
+     * @return un cartouche contenant une mémoire morte (initialisé) et son
+     *         controleur de banque mémoire
+     * @throws IOException
+     *             si le fichier passé en argument n'existe pas ou si ça taille
+     *             est égale a 0, ou si la sauvegarde ne peut pas être lue
+     */
+    public static Cartridge ofFile(File romFile, int flushPeriod)
+            throws IOException {
         Objects.requireNonNull(romFile);
-        byte[] data = new byte[(int) romFile.length()];
-
-        if (!romFile.exists()) {
-            throw new IOException();
-        } else {
-            try (InputStream stream = new FileInputStream(romFile)) {
-                data = stream.readAllBytes().clone();
-                // le stream.close est automatique par l'utilisation du try (cf.
-                // cours)
-            } catch (FileNotFoundException e) {
-                throw new IOException();
-            }
+        return ofPath(romFile.toPath(), flushPeriod);
+    }
 
-            int type = data[TYPE_CARTRIDGE];
-            int ramInfo = data[RAM_SIZE];
-
-            Preconditions.checkArgument(type >= 0 && type < 4);
-            Rom rom = new Rom(data);
-            Cartridge cartridge;
-            if (type == 0) {
-                MBC0 mbc0 = new MBC0(rom);
-                cartridge = new Cartridge(mbc0);
-            } else {
-                int sizeRam = RAM_SIZE_TABLE[ramInfo];
-                MBC1 mbc1 = new MBC1(rom, sizeRam);
-                cartridge = new Cartridge(mbc1);
-            }
+    /**
+     * Retourne une cartouche comme ofFile, pour une rom brute (.gb, .gbc),
+     * compressée avec gzip (.gb.gz, .gbc.gz) ou contenue dans une archive
+     * (première rom d'un .zip). Une rom compressée est décompressée au fil de
+     * la lecture, directement dans un tableau de la taille donnée par son
+     * en-tête. Les roms chargées sont gardées en cache pour tout le programme
+     * (cf. RomCache) : charger plusieurs fois le même jeu ne lit (et ne
+     * décompresse) le fichier qu'une fois.
+     * 
+     * @param romPath
+     *            le fichier de la rom
+     * @return la cartouche correspondante
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie, y compris si le fichier
+     *             n'existe pas ou si l'archive ne contient pas de rom
+     */
+    public static Cartridge ofPath(Path romPath) throws IOException {
+        return ofPath(romPath, BatteryRam.DEFAULT_FLUSH_PERIOD);
+    }
 
-            return cartridge;
+    /**
+     * Retourne une cartouche comme ofPath(romPath), avec le délai donné entre
+     * deux écritures de la sauvegarde (cf. ofFile(romFile, flushPeriod))
+     * 
+     * @param romPath
+     *            le fichier de la rom
+     * @param flushPeriod
+     *            le délai (en secondes) entre deux écritures de la sauvegarde,
+     *            ou NO_SAVE pour ne pas utiliser de sauvegarde
+     * @return la cartouche correspondante
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie, y compris si le fichier
+     *             n'existe pas, ou si la sauvegarde ne peut pas être lue
+     */
+    public static Cartridge ofPath(Path romPath, int flushPeriod)
+            throws IOException {
+        Objects.requireNonNull(romPath);
+        Preconditions.checkArgument(flushPeriod >= 0);
+        boolean persistent = flushPeriod != NO_SAVE;
+        RomLoad event = new RomLoad();
+        event.begin();
+
+        Rom rom = RomCache.get(romPath);
+        CartridgeHeader header = CartridgeHeader.of(rom);
+        int type = header.cartridgeType();
+
+        Cartridge cartridge;
+        switch (type) {
+        case 0: {
+            MBC0 mbc0 = new MBC0(rom);
+            cartridge = new Cartridge(mbc0, new Ram(0));
+        } break;
+        case 1: case 2: case TYPE_MBC1_RAM_BATTERY: {
+            int sizeRam = header.ramSize();
+            MBC1 mbc1 = new MBC1(rom, sizeRam);
+            cartridge = new Cartridge(mbc1, mbc1.ram());
+            if (persistent && type == TYPE_MBC1_RAM_BATTERY && sizeRam > 0) {
+                cartridge.battery = mbc1.attachBattery(saveFile(romPath),
+                        flushPeriod);
+            }
+        } break;
+        case TYPE_MBC3_TIMER_BATTERY: case TYPE_MBC3_TIMER_RAM_BATTERY:
+        case 0x11: case 0x12: case TYPE_MBC3_RAM_BATTERY: {
+            int sizeRam = header.ramSize();
+            boolean hasRtc = type == TYPE_MBC3_TIMER_BATTERY
+                    || type == TYPE_MBC3_TIMER_RAM_BATTERY;
+            MBC3 mbc3 = new MBC3(rom, sizeRam, hasRtc);
+            cartridge = new Cartridge(mbc3, mbc3.ram());
+            cartridge.timedController = hasRtc ? mbc3 : null;
+            if (persistent && (hasRtc
+                    || (type == TYPE_MBC3_RAM_BATTERY && sizeRam > 0))) {
+                cartridge.battery = mbc3.attachBattery(saveFile(romPath),
+                        flushPeriod);
+            }
+        } break;
+        case 0x19: case 0x1A: case TYPE_MBC5_RAM_BATTERY:
+        case 0x1C: case 0x1D: case TYPE_MBC5_RUMBLE_RAM_BATTERY: {
+            int sizeRam = header.ramSize();
+            MBC5 mbc5 = new MBC5(rom, sizeRam);
+            cartridge = new Cartridge(mbc5, mbc5.ram());
+            if (persistent && (type == TYPE_MBC5_RAM_BATTERY
+                    || type == TYPE_MBC5_RUMBLE_RAM_BATTERY) && sizeRam > 0) {
+                cartridge.battery = mbc5.attachBattery(saveFile(romPath),
+                        flushPeriod);
+            }
+        } break;
+        default:
+            throw new IllegalArgumentException();
         }
 
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = romPath.toString();
+            event.size = rom.size();
+            event.cartridgeType = type;
+            event.commit();
+        }
+        return cartridge;
     }
 
     @Override
@@ -104,4 +222,77 @@ public final class Cartridge implements Component {
         this.cartridgeController.write(address, data);
     }
 
+    /**
+     * Écrit sur le disque la mémoire vive à pile (s'il y en a une) et arrête
+     * sa sauvegarde en arrière-plan
+     * 
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie
+     */
+    @Override
+    public void close() throws IOException {
+        if (battery != null) {
+            battery.close();
+        }
+    }
+
+    /**
+     * Fait avancer l'horloge temps réel de la cartouche (s'il y en a une) avec
+     * les cycles donnés : elle suit alors le temps simulé (cf. GameBoy)
+     * 
+     * @param cycles
+     *            le cycle actuel de la GameBoy
+     */
+    public void setCycleSource(LongSupplier cycles) {
+        if (timedController != null) {
+            timedController.setCycleSource(cycles);
+        }
+    }
+
+    /**
+     * Methode qui retourne le fichier de sauvegarde associé à une rom : même
+     * nom, avec l'extension .sav à la place de la sienne (et de celle de la
+     * compression)
+     */
+    private static Path saveFile(Path romPath) {
+        return romPath.resolveSibling(RomFiles.baseName(romPath)
+                + SAVE_EXTENSION);
+    }
+
+    /**
+     * Retourne une vue en lecture seule, sans copie, de toute la mémoire vive
+     * de la cartouche (toutes les banques, dans l'ordre ; vide s'il n'y en a
+     * pas)
+     * 
+     * @return la vue de la mémoire vive
+     */
+    public ByteBuffer ramView() {
+        return ram.asReadOnlyBuffer();
+    }
+
+    /**
+     * Écrit l'état du contrôleur de banque mémoire (registres, mémoire vive et
+     * horloge). Si la mémoire vive est sauvegardée, loadState la fait
+     * entièrement réécrire dans le fichier de sauvegarde
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        controllerState.saveState(buffer);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        controllerState.loadState(buffer);
+    }
+
+    @Override
+    public int bank(int address) {
+        return cartridgeController.bank(address);
+    }
+
+    @Override
+    public void setBankListener(Runnable listener) {
+        cartridgeController.setBankListener(listener);
+    }
+
 }
@@ -0,0 +1,250 @@
+package ch.epfl.gameboj.component.cartridge;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+import ch.epfl.gameboj.Preconditions;
+import ch.epfl.gameboj.component.memory.Rom;
+
+/**
+ * Classe immuable qui représente l'en-tête d'une cartouche (octets 0x134 à
+ * 0x14F de la mémoire morte) : titre, type, tailles des mémoires et sommes de
+ * contrôle. Lire l'en-tête d'un fichier n'en lit que les 0x150 premiers
+ * octets, ce qui permet d'inspecter une bibliothèque de roms sans les charger.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+public final class CartridgeHeader {
+
+    public static final int START = 0x134;
+    public static final int END = 0x150;
+    public static final int SIZE = END - START;
+
+    private static final int TITLE = 0x134, TITLE_END = 0x144;
+    private static final int CGB_FLAG = 0x143;
+    private static final int TYPE = 0x147;
+    private static final int ROM_SIZE = 0x148;
+    private static final int RAM_SIZE = 0x149;
+    private static final int HEADER_CHECKSUM = 0x14D;
+    private static final int GLOBAL_CHECKSUM = 0x14E;
+    private static final int MIN_ROM_SIZE = 0x8000;
+    private static final int MAX_ROM_SIZE_CODE = 8;
+    private static final int[] RAM_SIZE_TABLE = new int[] { 0, 2048, 8192,
+            32768, 131072, 65536 };
+
+    private final byte[] bytes;
+
+    private CartridgeHeader(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Retourne l'en-tête contenu dans les octets donnés, qui commencent à
+     * l'adresse 0 de la mémoire morte
+     *
+     * @param rom
+     *            le début (au moins 0x150 octets) de la mémoire morte
+     * @return l'en-tête de la cartouche
+     * @throws IllegalArgumentException
+     *             si le tableau contient moins de 0x150 octets
+     */
+    public static CartridgeHeader of(byte[] rom) {
+        Preconditions.checkArgument(rom.length >= END);
+        return new CartridgeHeader(Arrays.copyOfRange(rom, START, END));
+    }
+
+    /**
+     * Retourne l'en-tête de la mémoire morte donnée
+     *
+     * @param rom
+     *            la mémoire morte (au moins 0x150 octets)
+     * @return l'en-tête de la cartouche
+     * @throws IllegalArgumentException
+     *             si la mémoire contient moins de 0x150 octets
+     */
+    static CartridgeHeader of(Rom rom) {
+        Preconditions.checkArgument(rom.size() >= END);
+        byte[] header = new byte[SIZE];
+        for (int i = 0; i < SIZE; ++i) {
+            header[i] = (byte) rom.read(START + i);
+        }
+        return new CartridgeHeader(header);
+    }
+
+    /**
+     * Retourne l'en-tête dont les octets 0x134 à 0x14F sont donnés (tels
+     * qu'enregistrés par bytes())
+     *
+     * @param header
+     *            les SIZE octets de l'en-tête
+     * @return l'en-tête correspondant
+     * @throws IllegalArgumentException
+     *             si le tableau ne contient pas exactement SIZE octets
+     */
+    static CartridgeHeader ofHeaderBytes(byte[] header) {
+        Preconditions.checkArgument(header.length == SIZE);
+        return new CartridgeHeader(header.clone());
+    }
+
+    /**
+     * Lit l'en-tête de la rom contenue dans le fichier donné, sans lire le
+     * reste du fichier (ni décompresser le reste de la rom, si le fichier est
+     * compressé, cf. Cartridge.ofPath)
+     *
+     * @param romFile
+     *            le fichier de la rom
+     * @return l'en-tête de la cartouche
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie, ou si le fichier est trop
+     *             court pour contenir un en-tête
+     */
+    public static CartridgeHeader ofFile(Path romFile) throws IOException {
+        Objects.requireNonNull(romFile);
+        if (RomFiles.isCompressed(romFile)) {
+            try (InputStream in = RomFiles.open(romFile)) {
+                byte[] start = in.readNBytes(END);
+                if (start.length < END) {
+                    throw new EOFException(romFile.toString());
+                }
+                return of(start);
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        try (FileChannel channel = FileChannel.open(romFile,
+                StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, START + buffer.position()) < 0) {
+                    throw new EOFException(romFile.toString());
+                }
+            }
+        }
+        return new CartridgeHeader(buffer.array());
+    }
+
+    /**
+     * @return le titre du jeu (caractères ASCII, sans les octets nuls de fin)
+     */
+    public String title() {
+        int end = TITLE_END;
+        if (Byte.toUnsignedInt(byteAt(CGB_FLAG)) >= 0x80) {
+            end = CGB_FLAG;
+        }
+        int length = 0;
+        while (TITLE + length < end && byteAt(TITLE + length) != 0) {
+            length += 1;
+        }
+        return new String(bytes, TITLE - START, length,
+                StandardCharsets.US_ASCII).trim();
+    }
+
+    /**
+     * @return le type de la cartouche (octet 0x147)
+     */
+    public int cartridgeType() {
+        return unsigned(TYPE);
+    }
+
+    /**
+     * @return le code de la taille de la mémoire morte (octet 0x148)
+     */
+    public int romSizeCode() {
+        return unsigned(ROM_SIZE);
+    }
+
+    /**
+     * @return la taille de la mémoire morte en octets
+     * @throws IllegalArgumentException
+     *             si le code de la taille n'est pas connu
+     */
+    public int romSize() {
+        Preconditions.checkArgument(romSizeCode() <= MAX_ROM_SIZE_CODE);
+        return MIN_ROM_SIZE << romSizeCode();
+    }
+
+    /**
+     * @return le code de la taille de la mémoire vive (octet 0x149)
+     */
+    public int ramSizeCode() {
+        return unsigned(RAM_SIZE);
+    }
+
+    /**
+     * @return la taille de la mémoire vive en octets (0 s'il n'y en a pas)
+     * @throws IllegalArgumentException
+     *             si le code de la taille n'est pas connu
+     */
+    public int ramSize() {
+        Preconditions.checkArgument(ramSizeCode() < RAM_SIZE_TABLE.length);
+        return RAM_SIZE_TABLE[ramSizeCode()];
+    }
+
+    /**
+     * @return la somme de contrôle de l'en-tête (octet 0x14D)
+     */
+    public int headerChecksum() {
+        return unsigned(HEADER_CHECKSUM);
+    }
+
+    /**
+     * @return vrai ssi la somme de contrôle de l'en-tête correspond à son
+     *         contenu (la vérification faite par la rom de démarrage)
+     */
+    public boolean isHeaderChecksumValid() {
+        int checksum = 0;
+        for (int i = TITLE; i < HEADER_CHECKSUM; ++i) {
+            checksum = checksum - unsigned(i) - 1;
+        }
+        return (checksum & 0xFF) == headerChecksum();
+    }
+
+    /**
+     * @return la somme de contrôle globale (octets 0x14E et 0x14F, poids fort
+     *         en premier), qui n'est vérifiée par aucun matériel
+     */
+    public int globalChecksum() {
+        return unsigned(GLOBAL_CHECKSUM) << Byte.SIZE
+                | unsigned(GLOBAL_CHECKSUM + 1);
+    }
+
+    /**
+     * @return une copie des SIZE octets de l'en-tête
+     */
+    byte[] bytes() {
+        return bytes.clone();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        return that instanceof CartridgeHeader
+                && Arrays.equals(bytes, ((CartridgeHeader) that).bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bytes);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (type 0x%02X, rom %d, ram %d)", title(),
+                cartridgeType(), romSizeCode(), ramSizeCode());
+    }
+
+    private byte byteAt(int address) {
+        return bytes[address - START];
+    }
+
+    private int unsigned(int address) {
+        return Byte.toUnsignedInt(byteAt(address));
+    }
+
+}
@@ -1,9 +1,11 @@
 package ch.epfl.gameboj.component.cartridge;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 import ch.epfl.gameboj.Preconditions;
-import ch.epfl.gameboj.component.Component;
+import ch.epfl.gameboj.component.BankedMemory;
+import ch.epfl.gameboj.component.Stateful;
 import ch.epfl.gameboj.component.memory.Rom;
 
 /**
@@ -13,7 +15,7 @@ import ch.epfl.gameboj.component.memory.Rom;
  *         d'une mémoire morte de 32 768 octets
  *
  */
-public final class MBC0 implements Component {
+public final class MBC0 implements BankedMemory, Stateful {
 
     private final Rom MBC0Rom;
     public static final int MBC0_SIZE_ROM = 0x8000;
@@ -52,4 +54,25 @@ public final class MBC0 implements Component {
         // Does nothing because Rom is a dead memory
     }
 
+    @Override
+    public int bank(int address) {
+        Preconditions.checkBits16(address);
+        return address < MBC0.MBC0_SIZE_ROM ? address / BANK_SIZE : -1;
+    }
+
+    @Override
+    public void setBankListener(Runnable listener) {
+        // Does nothing because banks never change
+    }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        // Does nothing because there is no state
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        // Does nothing because there is no state
+    }
+
 }
@@ -3,13 +3,20 @@ package ch.epfl.gameboj.component.cartridge;
 import static ch.epfl.gameboj.Preconditions.checkBits16;
 import static ch.epfl.gameboj.Preconditions.checkBits8;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
 import ch.epfl.gameboj.bits.Bits;
-import ch.epfl.gameboj.component.Component;
+import ch.epfl.gameboj.component.BankedMemory;
+import ch.epfl.gameboj.component.Stateful;
 import ch.epfl.gameboj.component.memory.Ram;
 import ch.epfl.gameboj.component.memory.Rom;
 
-public final class MBC1 implements Component {
+public final class MBC1 implements BankedMemory, Stateful {
     private static final int RAM_ENABLE = 0xA;
+    private static final int BANK_MASK = BANK_SIZE - 1;
+    private static final int RAM_BANK_MASK = 0x1FFF;
 
     private enum Mode { MODE_0, MODE_1 };
 
@@ -20,6 +27,11 @@ public final class MBC1 implements Component {
     private Mode mode;
     private int romLsb5, ramRom2;
     private final int romMask, ramMask;
+    // décalages des banques visibles, recalculés à chaque écriture dans un
+    // registre de banque : une lecture n'est qu'un accès indexé
+    private int romBank0Offset, romBankOffset, ramBankOffset;
+    private Runnable bankListener;
+    private BatteryRam battery;
 
     public MBC1(Rom rom, int ramSize) {
         this.rom = rom;
@@ -32,14 +44,15 @@ public final class MBC1 implements Component {
 
         this.romMask = rom.size() - 1;
         this.ramMask = ramSize - 1;
+        updateOffsets();
     }
 
     public int read(int address) {
         switch (Bits.extract(checkBits16(address), 13, 3)) {
         case 0: case 1:
-            return rom.read(romAddress(msb2(), 0, address));
+            return rom.read(romBank0Offset | (address & BANK_MASK));
         case 2: case 3:
-            return rom.read(romAddress(ramRom2, romLsb5, address));
+            return rom.read(romBankOffset | (address & BANK_MASK));
         case 5:
             return ramEnabled ? ram.read(ramAddress(address)) : 0xFF;
         default:
@@ -56,20 +69,85 @@ public final class MBC1 implements Component {
             break;
         case 1:
             romLsb5 = Math.max(1, Bits.clip(5, data));
+            bankChanged();
             break;
         case 2:
             ramRom2 = Bits.clip(2, data);
+            bankChanged();
             break;
         case 3:
             mode = Bits.test(data, 0) ? Mode.MODE_1 : Mode.MODE_0;
+            bankChanged();
             break;
         case 5:
-            if (ramEnabled)
-                ram.write(ramAddress(address), data);
+            if (ramEnabled) {
+                int index = ramAddress(address);
+                ram.write(index, data);
+                if (battery != null)
+                    battery.markDirty(index);
+            }
             break;
         }
     }
 
+    /**
+     * Sauvegarde la mémoire vive dans le fichier donné, après l'avoir chargée
+     * depuis ce fichier (cf. BatteryRam)
+     */
+    BatteryRam attachBattery(Path file, int flushPeriod) throws IOException {
+        battery = new BatteryRam(ram, null, file, flushPeriod);
+        return battery;
+    }
+
+    /**
+     * Retourne la mémoire vive de la cartouche (toutes les banques)
+     */
+    Ram ram() {
+        return ram;
+    }
+
+    @Override
+    public int bank(int address) {
+        switch (Bits.extract(checkBits16(address), 14, 2)) {
+        case 0:
+            return romBank0Offset / BANK_SIZE;
+        case 1:
+            return romBankOffset / BANK_SIZE;
+        default:
+            return -1;
+        }
+    }
+
+    @Override
+    public void setBankListener(Runnable listener) {
+        this.bankListener = listener;
+    }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.put((byte) (ramEnabled ? 1 : 0)).put((byte) mode.ordinal())
+                .put((byte) romLsb5).put((byte) ramRom2);
+        ram.copyTo(0, buffer, ram.size());
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        ramEnabled = buffer.get() != 0;
+        mode = Mode.values()[buffer.get()];
+        romLsb5 = buffer.get();
+        ramRom2 = buffer.get();
+        ram.copyFrom(buffer, 0, ram.size());
+        if (battery != null)
+            battery.markAllDirty();
+        bankChanged();
+    }
+
+    private void bankChanged() {
+        updateOffsets();
+        if (bankListener != null)
+            bankListener.run();
+    }
+
     private int msb2() {
         switch (mode) {
         case MODE_0: return 0;
@@ -78,11 +156,17 @@ public final class MBC1 implements Component {
         }
     }
 
-    private int romAddress(int b_20_19, int b_18_14, int b_13_0) {
-        return ((b_20_19 << 19) | (b_18_14 << 14) | Bits.clip(14, b_13_0)) & romMask;
+    private void updateOffsets() {
+        romBank0Offset = romAddress(msb2(), 0);
+        romBankOffset = romAddress(ramRom2, romLsb5);
+        ramBankOffset = (msb2() << 13) & ramMask;
+    }
+
+    private int romAddress(int b_20_19, int b_18_14) {
+        return ((b_20_19 << 19) | (b_18_14 << 14)) & romMask;
     }
 
     private int ramAddress(int b_12_0) {
-        return ((msb2() << 13) | Bits.clip(13, b_12_0)) & ramMask;
+        return ramBankOffset | (b_12_0 & ramMask & RAM_BANK_MASK);
     }
 }
@@ -0,0 +1,236 @@
+package ch.epfl.gameboj.component.cartridge;
+
+import static ch.epfl.gameboj.Preconditions.checkBits16;
+import static ch.epfl.gameboj.Preconditions.checkBits8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+import ch.epfl.gameboj.bits.Bits;
+import ch.epfl.gameboj.component.BankedMemory;
+import ch.epfl.gameboj.component.Stateful;
+import ch.epfl.gameboj.component.memory.Ram;
+import ch.epfl.gameboj.component.memory.Rom;
+
+/**
+ * Classe qui représente un contrôleur de banque mémoire de type 3 : banques
+ * de mémoire morte sur 7 bits, jusqu'à 4 banques de mémoire vive de 8 Ko et,
+ * pour certaines cartouches, une horloge temps réel (cf. Rtc) dont les
+ * registres sont visibles à la place de la mémoire vive.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+public final class MBC3 implements BankedMemory, Stateful {
+    private static final int RAM_ENABLE = 0xA;
+    private static final int BANK_MASK = BANK_SIZE - 1;
+    private static final int RAM_BANK_SIZE = 0x2000;
+    private static final int RTC_FIRST_REGISTER = 0x08;
+    private static final int LATCH_FIRST = 0x00, LATCH_SECOND = 0x01;
+
+    private final Rom rom;
+    private final Ram ram;
+    private final Rtc rtc;
+    private final int romMask, ramMask;
+
+    private boolean ramEnabled;
+    private int romBank, romBankOffset;
+    private int ramBankOrRtc;
+    private int lastLatchWrite;
+    private Runnable bankListener;
+    private BatteryRam battery;
+
+    /**
+     * Construit un contrôleur de type 3 pour la mémoire morte donnée, avec une
+     * mémoire vive de la taille donnée et, si demandé, une horloge temps réel
+     * (qui suit le temps simulé, cf. setCycleSource, et l'heure du système
+     * dans le fichier de sauvegarde)
+     *
+     * @param rom
+     *            la mémoire morte de la cartouche
+     * @param ramSize
+     *            la taille de la mémoire vive (0 s'il n'y en a pas)
+     * @param hasRtc
+     *            vrai ssi la cartouche a une horloge temps réel
+     */
+    public MBC3(Rom rom, int ramSize, boolean hasRtc) {
+        this(rom, ramSize, hasRtc ? System::currentTimeMillis : null);
+    }
+
+    /**
+     * Construit un contrôleur de type 3 dont l'horloge temps réel (s'il y en
+     * a une) utilise l'heure donnée pour son fichier de sauvegarde
+     *
+     * @param wallClock
+     *            l'heure actuelle en millisecondes, ou null s'il n'y a pas
+     *            d'horloge temps réel
+     */
+    MBC3(Rom rom, int ramSize, LongSupplier wallClock) {
+        this.rom = Objects.requireNonNull(rom);
+        this.ram = new Ram(ramSize);
+        this.rtc = wallClock == null ? null : new Rtc(wallClock);
+
+        this.ramEnabled = false;
+        this.ramBankOrRtc = 0;
+        this.lastLatchWrite = -1;
+        this.romMask = rom.size() - 1;
+        this.ramMask = ramSize - 1;
+        setRomBank(1);
+    }
+
+    @Override
+    public int read(int address) {
+        switch (Bits.extract(checkBits16(address), 13, 3)) {
+        case 0: case 1:
+            return rom.read(address & romMask);
+        case 2: case 3:
+            return rom.read(romBankOffset | (address & BANK_MASK));
+        case 5:
+            if (!ramEnabled)
+                return 0xFF;
+            if (ramBankOrRtc >= RTC_FIRST_REGISTER)
+                return rtcRegister() ? rtc.read(ramBankOrRtc - RTC_FIRST_REGISTER) : 0xFF;
+            return ram.size() > 0 ? ram.read(ramAddress(address)) : 0xFF;
+        default:
+            return NO_DATA;
+        }
+    }
+
+    @Override
+    public void write(int address, int data) {
+        checkBits8(data);
+        switch (Bits.extract(checkBits16(address), 13, 3)) {
+        case 0:
+            ramEnabled = Bits.clip(4, data) == RAM_ENABLE;
+            break;
+        case 1:
+            setRomBank(Math.max(1, Bits.clip(7, data)));
+            if (bankListener != null)
+                bankListener.run();
+            break;
+        case 2:
+            ramBankOrRtc = Bits.clip(4, data);
+            break;
+        case 3:
+            if (rtc != null && lastLatchWrite == LATCH_FIRST && data == LATCH_SECOND) {
+                rtc.latch();
+            }
+            lastLatchWrite = data;
+            break;
+        case 5:
+            if (!ramEnabled)
+                break;
+            if (ramBankOrRtc >= RTC_FIRST_REGISTER) {
+                if (rtcRegister()) {
+                    rtc.write(ramBankOrRtc - RTC_FIRST_REGISTER, data);
+                    rtcChanged();
+                }
+            } else if (ram.size() > 0) {
+                int index = ramAddress(address);
+                ram.write(index, data);
+                if (battery != null)
+                    battery.markDirty(index);
+            }
+            break;
+        }
+    }
+
+    /**
+     * Sauvegarde la mémoire vive (et l'horloge, s'il y en a une) dans le
+     * fichier donné, après les avoir chargées depuis ce fichier (cf.
+     * BatteryRam)
+     */
+    BatteryRam attachBattery(Path file, int flushPeriod) throws IOException {
+        battery = new BatteryRam(ram, rtc, file, flushPeriod);
+        return battery;
+    }
+
+    /**
+     * Retourne la mémoire vive de la cartouche (toutes les banques)
+     */
+    Ram ram() {
+        return ram;
+    }
+
+    @Override
+    public int bank(int address) {
+        switch (Bits.extract(checkBits16(address), 14, 2)) {
+        case 0:
+            return 0;
+        case 1:
+            return romBank;
+        default:
+            return -1;
+        }
+    }
+
+    @Override
+    public void setBankListener(Runnable listener) {
+        this.bankListener = listener;
+    }
+
+    /**
+     * Fait avancer l'horloge temps réel (s'il y en a une) avec les cycles
+     * donnés
+     *
+     * @param cycles
+     *            le cycle actuel de la GameBoy
+     */
+    public void setCycleSource(LongSupplier cycles) {
+        if (rtc != null)
+            rtc.setCycleSource(cycles);
+    }
+
+    /**
+     * Écrit les registres, la mémoire vive et, s'il y en a une, l'horloge
+     * (dans le temps simulé : la restauration ne dépend pas de l'heure réelle)
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.put((byte) (ramEnabled ? 1 : 0)).put((byte) romBank)
+                .put((byte) ramBankOrRtc).putShort((short) lastLatchWrite);
+        ram.copyTo(0, buffer, ram.size());
+        if (rtc != null)
+            rtc.saveState(buffer);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        ramEnabled = buffer.get() != 0;
+        setRomBank(Byte.toUnsignedInt(buffer.get()));
+        ramBankOrRtc = buffer.get();
+        lastLatchWrite = buffer.getShort();
+        ram.copyFrom(buffer, 0, ram.size());
+        if (rtc != null)
+            rtc.loadState(buffer);
+        if (battery != null) {
+            battery.markAllDirty();
+            if (rtc != null)
+                rtcChanged();
+        }
+        if (bankListener != null)
+            bankListener.run();
+    }
+
+    private void setRomBank(int bank) {
+        romBankOffset = (bank * BANK_SIZE) & romMask;
+        romBank = romBankOffset / BANK_SIZE;
+    }
+
+    private boolean rtcRegister() {
+        return rtc != null
+                && ramBankOrRtc - RTC_FIRST_REGISTER < Rtc.REGISTER_COUNT;
+    }
+
+    private void rtcChanged() {
+        if (battery != null)
+            battery.markRtcDirty(rtc.save());
+    }
+
+    private int ramAddress(int b_12_0) {
+        return (ramBankOrRtc * RAM_BANK_SIZE | Bits.clip(13, b_12_0)) & ramMask;
+    }
+}
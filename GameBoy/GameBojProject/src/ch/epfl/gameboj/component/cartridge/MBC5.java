@@ -0,0 +1,175 @@
+package ch.epfl.gameboj.component.cartridge;
+
+import static ch.epfl.gameboj.Preconditions.checkBits16;
+import static ch.epfl.gameboj.Preconditions.checkBits8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Objects;
+
+import ch.epfl.gameboj.bits.Bits;
+import ch.epfl.gameboj.component.BankedMemory;
+import ch.epfl.gameboj.component.Stateful;
+import ch.epfl.gameboj.component.memory.Ram;
+import ch.epfl.gameboj.component.memory.Rom;
+
+/**
+ * Classe qui représente un contrôleur de banque mémoire de type 5 : banques
+ * de mémoire morte sur 9 bits (jusqu'à 8 Mo, la banque 0 pouvant aussi être
+ * visible dans la zone 0x4000 à 0x7FFF) et jusqu'à 16 banques de mémoire vive
+ * de 8 Ko. Les décalages des banques visibles ne sont recalculés qu'à
+ * l'écriture d'un registre de banque.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+public final class MBC5 implements BankedMemory, Stateful {
+    private static final int RAM_ENABLE = 0xA;
+    private static final int BANK_MASK = BANK_SIZE - 1;
+    private static final int RAM_BANK_SIZE = 0x2000;
+    private static final int RAM_BANK_MASK = RAM_BANK_SIZE - 1;
+    private static final int ROM_BANK_HIGH = 0x3000;
+
+    private final Rom rom;
+    private final Ram ram;
+    private final int romMask, ramMask;
+
+    private boolean ramEnabled;
+    private int romBankLow8, romBankHigh1, ramBank;
+    private int romBankOffset, ramBankOffset;
+    private Runnable bankListener;
+    private BatteryRam battery;
+
+    /**
+     * Construit un contrôleur de type 5 pour la mémoire morte donnée, avec une
+     * mémoire vive de la taille donnée
+     *
+     * @param rom
+     *            la mémoire morte de la cartouche
+     * @param ramSize
+     *            la taille de la mémoire vive (0 s'il n'y en a pas)
+     */
+    public MBC5(Rom rom, int ramSize) {
+        this.rom = Objects.requireNonNull(rom);
+        this.ram = new Ram(ramSize);
+
+        this.ramEnabled = false;
+        this.romBankLow8 = 1;
+        this.romBankHigh1 = 0;
+        this.ramBank = 0;
+
+        this.romMask = rom.size() - 1;
+        this.ramMask = ramSize - 1;
+        updateOffsets();
+    }
+
+    @Override
+    public int read(int address) {
+        switch (Bits.extract(checkBits16(address), 13, 3)) {
+        case 0: case 1:
+            return rom.read(address & romMask);
+        case 2: case 3:
+            return rom.read(romBankOffset | (address & BANK_MASK));
+        case 5:
+            return ramEnabled && ram.size() > 0
+                    ? ram.read(ramBankOffset | (address & RAM_BANK_MASK & ramMask))
+                    : 0xFF;
+        default:
+            return NO_DATA;
+        }
+    }
+
+    @Override
+    public void write(int address, int data) {
+        checkBits8(data);
+        switch (Bits.extract(checkBits16(address), 13, 3)) {
+        case 0:
+            ramEnabled = Bits.clip(4, data) == RAM_ENABLE;
+            break;
+        case 1:
+            if (address < ROM_BANK_HIGH)
+                romBankLow8 = data;
+            else
+                romBankHigh1 = Bits.clip(1, data);
+            bankChanged();
+            break;
+        case 2:
+            ramBank = Bits.clip(4, data);
+            updateOffsets();
+            break;
+        case 5:
+            if (ramEnabled && ram.size() > 0) {
+                int index = ramBankOffset | (address & RAM_BANK_MASK & ramMask);
+                ram.write(index, data);
+                if (battery != null)
+                    battery.markDirty(index);
+            }
+            break;
+        }
+    }
+
+    /**
+     * Sauvegarde la mémoire vive dans le fichier donné, après l'avoir chargée
+     * depuis ce fichier (cf. BatteryRam)
+     */
+    BatteryRam attachBattery(Path file, int flushPeriod) throws IOException {
+        battery = new BatteryRam(ram, null, file, flushPeriod);
+        return battery;
+    }
+
+    /**
+     * Retourne la mémoire vive de la cartouche (toutes les banques)
+     */
+    Ram ram() {
+        return ram;
+    }
+
+    @Override
+    public int bank(int address) {
+        switch (Bits.extract(checkBits16(address), 14, 2)) {
+        case 0:
+            return 0;
+        case 1:
+            return romBankOffset / BANK_SIZE;
+        default:
+            return -1;
+        }
+    }
+
+    @Override
+    public void setBankListener(Runnable listener) {
+        this.bankListener = listener;
+    }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.put((byte) (ramEnabled ? 1 : 0)).put((byte) romBankLow8)
+                .put((byte) romBankHigh1).put((byte) ramBank);
+        ram.copyTo(0, buffer, ram.size());
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        ramEnabled = buffer.get() != 0;
+        romBankLow8 = Byte.toUnsignedInt(buffer.get());
+        romBankHigh1 = buffer.get();
+        ramBank = buffer.get();
+        ram.copyFrom(buffer, 0, ram.size());
+        if (battery != null)
+            battery.markAllDirty();
+        bankChanged();
+    }
+
+    private void bankChanged() {
+        updateOffsets();
+        if (bankListener != null)
+            bankListener.run();
+    }
+
+    private void updateOffsets() {
+        romBankOffset = ((romBankHigh1 << 8 | romBankLow8) * BANK_SIZE)
+                & romMask;
+        ramBankOffset = (ramBank * RAM_BANK_SIZE) & ramMask;
+    }
+}
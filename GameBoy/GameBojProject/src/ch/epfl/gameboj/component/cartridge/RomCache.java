@@ -0,0 +1,102 @@
+package ch.epfl.gameboj.component.cartridge;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import ch.epfl.gameboj.component.memory.Rom;
+
+/**
+ * Classe utilitaire qui garde en mémoire, pour tout le programme, les roms
+ * déjà chargées (cf. RomFiles), identifiées par le chemin de leur fichier, sa
+ * date de modification et sa taille. Une mémoire morte n'étant jamais
+ * modifiée, toutes les cartouches d'un même jeu partagent la même : un
+ * fichier compressé n'est décompressé qu'une fois, même s'il est chargé en
+ * même temps par plusieurs fils. Les roms ne sont gardées que par des
+ * références « douces » (SoftReference) : le ramasse-miettes peut les
+ * libérer s'il manque de mémoire, elles sont alors relues au besoin.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+final class RomCache {
+
+    private static final ConcurrentMap<Key, Slot> SLOTS = new ConcurrentHashMap<>();
+
+    private RomCache() {
+    }
+
+    /**
+     * Retourne la rom contenue dans le fichier donné, lue depuis le cache si
+     * le fichier n'a pas changé depuis son dernier chargement
+     *
+     * @param file
+     *            le fichier de la rom (brute ou compressée)
+     * @return la mémoire morte correspondante
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie, y compris si le fichier
+     *             n'existe pas
+     */
+    static Rom get(Path file) throws IOException {
+        Path path = file.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(path,
+                BasicFileAttributes.class);
+        Key key = new Key(path, attributes.lastModifiedTime().toMillis(),
+                attributes.size());
+
+        Slot slot = SLOTS.get(key);
+        if (slot == null) {
+            // le fichier a changé (ou n'a jamais été chargé) : les anciennes
+            // versions ne serviront plus
+            SLOTS.keySet().removeIf(k -> k.path.equals(path) && !k.equals(key));
+            slot = SLOTS.computeIfAbsent(key, k -> new Slot());
+        }
+        return slot.rom(path);
+    }
+
+    private static final class Key {
+        private final Path path;
+        private final long lastModified;
+        private final long size;
+
+        private Key(Path path, long lastModified, long size) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            if (!(that instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) that;
+            return path.equals(k.path) && lastModified == k.lastModified
+                    && size == k.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, lastModified, size);
+        }
+    }
+
+    private static final class Slot {
+        private SoftReference<Rom> reference = new SoftReference<>(null);
+
+        private synchronized Rom rom(Path path) throws IOException {
+            Rom rom = reference.get();
+            if (rom == null) {
+                rom = RomFiles.read(path);
+                reference = new SoftReference<>(rom);
+            }
+            return rom;
+        }
+    }
+
+}
@@ -0,0 +1,187 @@
+package ch.epfl.gameboj.component.cartridge;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import ch.epfl.gameboj.component.memory.Rom;
+
+/**
+ * Classe utilitaire qui lit les fichiers de roms, bruts (.gb, .gbc) ou
+ * compressés (.gb.gz, .gbc.gz, ou première rom d'une archive .zip). Les
+ * fichiers compressés sont décompressés au fil de la lecture, directement dans
+ * un tableau dont la taille est donnée par l'en-tête de la rom.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+final class RomFiles {
+
+    private static final String GZIP_EXTENSION = ".gz";
+    private static final String ZIP_EXTENSION = ".zip";
+    private static final String[] ROM_EXTENSIONS = { ".gb", ".gbc" };
+    private static final int STREAM_BUFFER_SIZE = 1 << 16;
+
+    private RomFiles() {
+    }
+
+    /**
+     * Indique si le fichier donné est une rom, compressée ou non (d'après son
+     * extension)
+     *
+     * @param file
+     *            le fichier
+     * @return vrai ssi son extension est celle d'une rom ou d'une rom
+     *         compressée
+     */
+    static boolean isRom(Path file) {
+        String name = lowerCaseName(file);
+        if (name.endsWith(ZIP_EXTENSION)) {
+            return true;
+        }
+        if (name.endsWith(GZIP_EXTENSION)) {
+            name = name.substring(0, name.length() - GZIP_EXTENSION.length());
+        }
+        return isRomName(name);
+    }
+
+    /**
+     * Indique si le fichier donné est compressé (d'après son extension)
+     *
+     * @param file
+     *            le fichier
+     * @return vrai ssi c'est un fichier .gz ou .zip
+     */
+    static boolean isCompressed(Path file) {
+        String name = lowerCaseName(file);
+        return name.endsWith(GZIP_EXTENSION) || name.endsWith(ZIP_EXTENSION);
+    }
+
+    /**
+     * Ouvre un flot sur le contenu (décompressé) de la rom contenue dans le
+     * fichier donné
+     *
+     * @param file
+     *            le fichier de la rom
+     * @return un flot sur les octets de la rom, à fermer par l'appelant
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie, ou si l'archive ne contient
+     *             aucune rom
+     */
+    static InputStream open(Path file) throws IOException {
+        String name = lowerCaseName(file);
+        InputStream raw = Files.newInputStream(file);
+        try {
+            if (name.endsWith(GZIP_EXTENSION)) {
+                return new GZIPInputStream(raw, STREAM_BUFFER_SIZE);
+            } else if (name.endsWith(ZIP_EXTENSION)) {
+                ZipInputStream zip = new ZipInputStream(raw);
+                for (ZipEntry e = zip.getNextEntry(); e != null; e = zip
+                        .getNextEntry()) {
+                    if (!e.isDirectory()
+                            && isRomName(e.getName().toLowerCase(Locale.ROOT))) {
+                        return zip;
+                    }
+                }
+                throw new IOException("No ROM in " + file);
+            } else {
+                return raw;
+            }
+        } catch (IOException | RuntimeException e) {
+            raw.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Lit entièrement la rom contenue dans le fichier donné, directement dans
+     * le tableau de la mémoire morte retournée (sans copie)
+     *
+     * @param file
+     *            le fichier de la rom
+     * @return la rom
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie
+     */
+    static Rom read(Path file) throws IOException {
+        if (!isCompressed(file)) {
+            byte[] data = Files.readAllBytes(file);
+            return Rom.wrap(data, data.length);
+        }
+        try (InputStream in = open(file)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Retourne le nom du fichier donné sans son extension (ni celle de la
+     * compression), par exemple "tetris" pour "tetris.gb.gz"
+     *
+     * @param file
+     *            le fichier
+     * @return son nom sans extension
+     */
+    static String baseName(Path file) {
+        String name = file.getFileName().toString();
+        if (name.toLowerCase(Locale.ROOT).endsWith(GZIP_EXTENSION)) {
+            name = name.substring(0, name.length() - GZIP_EXTENSION.length());
+        }
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * Lit le flot donné jusqu'à sa fin : l'en-tête d'abord, puis le reste
+     * directement dans un tableau de la taille annoncée par l'en-tête. Un flot
+     * trop court donne une rom sur le début du tableau ; seul un flot trop
+     * long oblige à recopier le tableau pour l'agrandir
+     */
+    private static Rom read(InputStream in) throws IOException {
+        byte[] start = in.readNBytes(CartridgeHeader.END);
+        if (start.length < CartridgeHeader.END) {
+            return Rom.wrap(start, start.length);
+        }
+
+        int expected;
+        try {
+            expected = Math.max(CartridgeHeader.of(start).romSize(),
+                    CartridgeHeader.END);
+        } catch (IllegalArgumentException e) {
+            expected = CartridgeHeader.END;
+        }
+        byte[] data = Arrays.copyOf(start, expected);
+        int length = CartridgeHeader.END + in.readNBytes(data,
+                CartridgeHeader.END, expected - CartridgeHeader.END);
+        if (length < expected) {
+            return Rom.wrap(data, length);
+        }
+
+        byte[] rest = in.readAllBytes();
+        if (rest.length == 0) {
+            return Rom.wrap(data, length);
+        }
+        byte[] all = Arrays.copyOf(data, length + rest.length);
+        System.arraycopy(rest, 0, all, length, rest.length);
+        return Rom.wrap(all, all.length);
+    }
+
+    private static boolean isRomName(String lowerCaseName) {
+        for (String extension : ROM_EXTENSIONS) {
+            if (lowerCaseName.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String lowerCaseName(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT);
+    }
+
+}
@@ -0,0 +1,238 @@
+package ch.epfl.gameboj.component.cartridge;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Classe qui représente un index persistant des en-têtes de roms (cf.
+ * CartridgeHeader), dont chaque entrée est identifiée par le chemin du fichier,
+ * sa date de modification et sa taille. Parcourir à nouveau une bibliothèque
+ * ne lit donc que les fichiers ajoutés ou modifiés depuis le dernier
+ * parcours ; les autres ne coûtent que leurs attributs, obtenus lors du
+ * parcours du répertoire.
+ *
+ * Format du fichier (DataOutputStream) : nombre magique, version, nombre
+ * d'entrées puis, pour chaque entrée, le chemin, la date de modification (ms),
+ * la taille et les SIZE octets de l'en-tête. Un fichier illisible ou d'une
+ * autre version est ignoré (l'index est reconstruit).
+ *
+ * Les instances ne sont pas sûres pour un usage concurrent.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+public final class RomIndex implements Closeable {
+
+    private static final int MAGIC = 0x47424A49; // "GBJI"
+    private static final int VERSION = 1;
+
+    private final Path indexFile;
+    private final Map<Path, Entry> entries;
+    private boolean modified = false;
+
+    private RomIndex(Path indexFile, Map<Path, Entry> entries) {
+        this.indexFile = indexFile;
+        this.entries = entries;
+    }
+
+    /**
+     * Ouvre l'index enregistré dans le fichier donné (vide si le fichier
+     * n'existe pas ou n'est pas un index valide)
+     *
+     * @param indexFile
+     *            le fichier de l'index
+     * @return l'index
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie autre que l'absence du
+     *             fichier
+     */
+    public static RomIndex open(Path indexFile) throws IOException {
+        Objects.requireNonNull(indexFile);
+        Map<Path, Entry> entries = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(indexFile)))) {
+            if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+                int count = in.readInt();
+                for (int i = 0; i < count; ++i) {
+                    Path path = Path.of(in.readUTF());
+                    long lastModified = in.readLong();
+                    long size = in.readLong();
+                    byte[] header = new byte[CartridgeHeader.SIZE];
+                    in.readFully(header);
+                    entries.put(path, new Entry(lastModified, size,
+                            CartridgeHeader.ofHeaderBytes(header)));
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // pas encore d'index : il sera créé au premier enregistrement
+        } catch (IOException | IllegalArgumentException e) {
+            // index tronqué ou corrompu : on le reconstruit
+            entries.clear();
+        }
+        return new RomIndex(indexFile, entries);
+    }
+
+    /**
+     * Retourne l'en-tête de la rom contenue dans le fichier donné, lu depuis
+     * l'index si le fichier n'a pas changé, et depuis le fichier sinon
+     *
+     * @param romFile
+     *            le fichier de la rom
+     * @return son en-tête
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie, ou si le fichier ne
+     *             contient pas d'en-tête
+     */
+    public CartridgeHeader header(Path romFile) throws IOException {
+        Path path = romFile.toAbsolutePath().normalize();
+        return header(path, Files.readAttributes(path,
+                BasicFileAttributes.class));
+    }
+
+    /**
+     * Parcourt le répertoire donné (et ses sous-répertoires) et retourne les
+     * en-têtes de toutes les roms (brutes ou compressées, cf.
+     * Cartridge.ofPath) qu'il contient, triés par chemin. Les fichiers
+     * illisibles sont ignorés, et les entrées des fichiers disparus de ce
+     * répertoire sont retirées de l'index
+     *
+     * @param directory
+     *            le répertoire à parcourir
+     * @return les en-têtes des roms, par chemin absolu
+     * @throws IOException
+     *             si le répertoire ne peut pas être parcouru
+     */
+    public Map<Path, CartridgeHeader> scan(Path directory) throws IOException {
+        Path root = directory.toAbsolutePath().normalize();
+        Map<Path, CartridgeHeader> headers = new TreeMap<>();
+        Set<Path> seen = new HashSet<>();
+
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file,
+                    BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && RomFiles.isRom(file)) {
+                    Path path = file.normalize();
+                    seen.add(path);
+                    try {
+                        headers.put(path, header(path, attributes));
+                    } catch (IOException e) {
+                        // fichier illisible ou trop court : ignoré
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        if (entries.keySet().removeIf(p -> p.startsWith(root)
+                && !seen.contains(p))) {
+            modified = true;
+        }
+        return headers;
+    }
+
+    /**
+     * Enregistre l'index dans son fichier s'il a changé depuis son ouverture
+     * ou son dernier enregistrement (en remplaçant le fichier d'un coup, pour
+     * ne jamais laisser un index à moitié écrit)
+     *
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie
+     */
+    public void save() throws IOException {
+        if (!modified) {
+            return;
+        }
+        Path parent = indexFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = Files.createTempFile(parent,
+                indexFile.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<Path, Entry> e : entries.entrySet()) {
+                    out.writeUTF(e.getKey().toString());
+                    out.writeLong(e.getValue().lastModified);
+                    out.writeLong(e.getValue().size);
+                    out.write(e.getValue().header.bytes());
+                }
+            }
+            try {
+                Files.move(temporary, indexFile,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, indexFile,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        modified = false;
+    }
+
+    /**
+     * Enregistre l'index (cf. save)
+     *
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie
+     */
+    @Override
+    public void close() throws IOException {
+        save();
+    }
+
+    private CartridgeHeader header(Path path, BasicFileAttributes attributes)
+            throws IOException {
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+        Entry entry = entries.get(path);
+        if (entry != null && entry.lastModified == lastModified
+                && entry.size == size) {
+            return entry.header;
+        }
+        CartridgeHeader header = CartridgeHeader.ofFile(path);
+        entries.put(path, new Entry(lastModified, size, header));
+        modified = true;
+        return header;
+    }
+
+    private static final class Entry {
+        private final long lastModified;
+        private final long size;
+        private final CartridgeHeader header;
+
+        private Entry(long lastModified, long size, CartridgeHeader header) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.header = header;
+        }
+    }
+
+}
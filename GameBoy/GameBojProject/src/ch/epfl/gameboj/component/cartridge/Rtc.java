@@ -0,0 +1,231 @@
+package ch.epfl.gameboj.component.cartridge;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+import ch.epfl.gameboj.bits.Bits;
+import ch.epfl.gameboj.component.Stateful;
+
+/**
+ * Classe qui représente l'horloge temps réel d'une cartouche MBC3. L'horloge
+ * n'est pas avancée à chaque cycle : elle garde seulement le nombre de
+ * secondes écoulées à un cycle de référence, et la valeur courante est
+ * calculée à la demande (lecture de l'horloge) à partir du cycle actuel de la
+ * GameBoy (cf. setCycleSource) : elle suit le temps simulé, ce qui rend la
+ * simulation reproductible (cf. saveState).
+ *
+ * Seul le fichier de sauvegarde tient compte de l'heure réelle. Format de
+ * sauvegarde (48 octets, little endian, celui de BGB/VBA) : les 5 registres
+ * courants puis les 5 registres verrouillés sur 4 octets chacun, puis
+ * l'instant de la sauvegarde en secondes (temps Unix) sur 8 octets.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+final class Rtc implements Stateful {
+
+    public static final int REGISTER_COUNT = 5;
+    public static final int SAVE_SIZE = 2 * REGISTER_COUNT * Integer.BYTES
+            + Long.BYTES;
+
+    private static final int SECONDS = 0, MINUTES = 1, HOURS = 2, DAY_LOW = 3,
+            DAY_HIGH = 4;
+    private static final int DAY_HIGH_BIT = 0, HALT_BIT = 6, CARRY_BIT = 7;
+    private static final int[] MASKS = new int[] { 0x3F, 0x3F, 0x1F, 0xFF,
+            0xC1 };
+    private static final long SECONDS_BY_MINUTE = 60, SECONDS_BY_HOUR = 3600,
+            SECONDS_BY_DAY = 86400, MAX_DAYS = 512;
+    private static final long MILLIS_BY_SECOND = 1000;
+    private static final long CYCLES_BY_SECOND = 1L << 20;
+
+    private final LongSupplier wallClock;
+    private LongSupplier cycles = () -> 0;
+    private final int[] latched = new int[REGISTER_COUNT];
+    private long baseSeconds = 0;
+    private long baseCycle = 0;
+    private boolean halted = false;
+    private boolean carry = false;
+
+    /**
+     * Construit une horloge à zéro, arrêtée jusqu'à ce qu'une source de
+     * cycles lui soit donnée
+     *
+     * @param wallClock
+     *            l'heure réelle en millisecondes (temps Unix), utilisée
+     *            seulement pour le fichier de sauvegarde (cf. save et load)
+     */
+    Rtc(LongSupplier wallClock) {
+        this.wallClock = Objects.requireNonNull(wallClock);
+    }
+
+    /**
+     * Fait avancer l'horloge avec les cycles donnés (1 seconde tous les 2^20
+     * cycles), à partir de sa valeur actuelle
+     *
+     * @param cycles
+     *            le cycle actuel de la GameBoy
+     */
+    void setCycleSource(LongSupplier cycles) {
+        long seconds = seconds();
+        this.cycles = Objects.requireNonNull(cycles);
+        rebase(seconds);
+    }
+
+    /**
+     * Copie la valeur courante de l'horloge dans les registres verrouillés
+     */
+    void latch() {
+        int[] current = registers(seconds());
+        System.arraycopy(current, 0, latched, 0, REGISTER_COUNT);
+    }
+
+    /**
+     * Retourne la valeur du registre verrouillé donné
+     *
+     * @param register
+     *            le numéro du registre (0 à 4 : secondes, minutes, heures,
+     *            jours (8 bits de poids faible), jours (bit 8) / arrêt /
+     *            retenue)
+     * @return sa valeur
+     */
+    int read(int register) {
+        return latched[register];
+    }
+
+    /**
+     * Modifie le registre donné de l'horloge courante (et du registre
+     * verrouillé correspondant)
+     *
+     * @param register
+     *            le numéro du registre (cf. read)
+     * @param value
+     *            la nouvelle valeur (8 bits)
+     */
+    void write(int register, int value) {
+        int[] current = registers(seconds());
+        current[register] = value & MASKS[register];
+        latched[register] = current[register];
+
+        boolean halt = Bits.test(current[DAY_HIGH], HALT_BIT);
+        carry = Bits.test(current[DAY_HIGH], CARRY_BIT);
+        rebase(total(current));
+        halted = halt;
+    }
+
+    /**
+     * Retourne l'état de l'horloge au format du fichier de sauvegarde
+     *
+     * @return un nouveau tableau de SAVE_SIZE octets
+     */
+    byte[] save() {
+        long now = wallClock.getAsLong();
+        ByteBuffer out = ByteBuffer.allocate(SAVE_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int r : registers(seconds())) {
+            out.putInt(r);
+        }
+        for (int r : latched) {
+            out.putInt(r);
+        }
+        out.putLong(Math.floorDiv(now, MILLIS_BY_SECOND));
+        return out.array();
+    }
+
+    /**
+     * Restaure l'état de l'horloge depuis le format du fichier de sauvegarde,
+     * en lui ajoutant le temps réel écoulé depuis la sauvegarde (sauf si elle
+     * est arrêtée)
+     *
+     * @param in
+     *            le tampon à lire (SAVE_SIZE octets à partir de sa position)
+     */
+    void load(ByteBuffer in) {
+        ByteBuffer le = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+        int[] current = new int[REGISTER_COUNT];
+        for (int i = 0; i < REGISTER_COUNT; ++i) {
+            current[i] = le.getInt() & MASKS[i];
+        }
+        for (int i = 0; i < REGISTER_COUNT; ++i) {
+            latched[i] = le.getInt() & MASKS[i];
+        }
+        long savedAt = le.getLong();
+
+        carry = Bits.test(current[DAY_HIGH], CARRY_BIT);
+        halted = Bits.test(current[DAY_HIGH], HALT_BIT);
+        long elapsed = Math.floorDiv(wallClock.getAsLong(), MILLIS_BY_SECOND)
+                - savedAt;
+        baseSeconds = total(current) + (halted ? 0 : Math.max(0, elapsed));
+        baseCycle = cycles.getAsLong();
+    }
+
+    /**
+     * Écrit l'état exact de l'horloge (indépendant de l'heure réelle) :
+     * restaurée, elle reprend au même point du temps simulé
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.putLong(baseSeconds).putLong(baseCycle)
+                .put((byte) ((halted ? 1 : 0) | (carry ? 2 : 0)));
+        for (int r : latched) {
+            buffer.put((byte) r);
+        }
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        baseSeconds = buffer.getLong();
+        baseCycle = buffer.getLong();
+        int flags = buffer.get();
+        halted = (flags & 1) != 0;
+        carry = (flags & 2) != 0;
+        for (int i = 0; i < REGISTER_COUNT; ++i) {
+            latched[i] = Byte.toUnsignedInt(buffer.get());
+        }
+    }
+
+    /**
+     * Retourne le nombre de secondes de l'horloge à l'instant présent (moins
+     * de 512 jours, la retenue étant mise à 1 en cas de dépassement)
+     */
+    private long seconds() {
+        if (halted) {
+            return baseSeconds;
+        }
+        long elapsed = Math.floorDiv(cycles.getAsLong() - baseCycle,
+                CYCLES_BY_SECOND);
+        long seconds = baseSeconds + Math.max(0, elapsed);
+        if (seconds >= MAX_DAYS * SECONDS_BY_DAY) {
+            carry = true;
+            seconds %= MAX_DAYS * SECONDS_BY_DAY;
+            rebase(seconds);
+        }
+        return seconds;
+    }
+
+    private void rebase(long seconds) {
+        baseSeconds = seconds;
+        baseCycle = cycles.getAsLong();
+    }
+
+    private int[] registers(long seconds) {
+        long days = seconds / SECONDS_BY_DAY;
+        int[] r = new int[REGISTER_COUNT];
+        r[SECONDS] = (int) (seconds % SECONDS_BY_MINUTE);
+        r[MINUTES] = (int) (seconds / SECONDS_BY_MINUTE % 60);
+        r[HOURS] = (int) (seconds / SECONDS_BY_HOUR % 24);
+        r[DAY_LOW] = Bits.clip(Byte.SIZE, (int) days);
+        r[DAY_HIGH] = (int) (days >> Byte.SIZE) << DAY_HIGH_BIT
+                | (halted ? 1 << HALT_BIT : 0) | (carry ? 1 << CARRY_BIT : 0);
+        return r;
+    }
+
+    private static long total(int[] r) {
+        long days = r[DAY_LOW]
+                | (Bits.test(r[DAY_HIGH], DAY_HIGH_BIT) ? 1 << Byte.SIZE : 0);
+        return days * SECONDS_BY_DAY + r[HOURS] * SECONDS_BY_HOUR
+                + r[MINUTES] * SECONDS_BY_MINUTE + r[SECONDS];
+    }
+
+}
@@ -4,23 +4,30 @@ import ch.epfl.gameboj.component.Component;
 import ch.epfl.gameboj.*;
 import ch.epfl.gameboj.component.cpu.Alu.Flag;
 import ch.epfl.gameboj.component.cpu.Alu.RotDir;
+import ch.epfl.gameboj.component.cpu.Opcode.Family;
 import ch.epfl.gameboj.component.cpu.Opcode.Kind;
 import ch.epfl.gameboj.component.memory.Ram;
 
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.LongSupplier;
 
 import ch.epfl.gameboj.Bus;
 import ch.epfl.gameboj.Register;
 import ch.epfl.gameboj.bits.Bit;
 import ch.epfl.gameboj.bits.Bits;
+import ch.epfl.gameboj.component.BankedMemory;
 import ch.epfl.gameboj.component.Clocked;
+import ch.epfl.gameboj.component.Stateful;
 
 /**
  * Classe qui représente le processeur du Game Boy
  * @author Auguste Lefevre (269821) Marc Watine (269508)
  *
  */
-public final class Cpu implements Component, Clocked {
+public final class Cpu implements Component, Clocked, Stateful {
 
     private final static int MAX_VALUE = 0xFFFF;
     
@@ -56,6 +63,25 @@ public final class Cpu implements Component, Clocked {
         VBLANK, LCD_STAT, TIMER, SERIAL, JOYPAD
     }
 
+    /**
+     * Type enuméré qui représente les paires d'instructions consécutives que
+     * le processeur peut exécuter d'un seul coup (cf. setFusedPairs)
+     *
+     */
+    public enum FusedPair {
+        LD_A_HLRU_LD_DER_A(Family.LD_A_HLRU, Family.LD_DER_A),
+        DEC_R8_JR_CC_E8(Family.DEC_R8, Family.JR_CC_E8),
+        CP_A_N8_JR_CC_E8(Family.CP_A_N8, Family.JR_CC_E8);
+
+        private final Family first;
+        private final Family second;
+
+        private FusedPair(Family first, Family second) {
+            this.first = first;
+            this.second = second;
+        }
+    }
+
     /**
      * Quelque variable necessaire au bon fonctionnement de la classe CPU (les
      * noms sont explicites)
@@ -70,15 +96,37 @@ public final class Cpu implements Component, Clocked {
     private Bus bus;
     private final Ram HighRam = new Ram(AddressMap.HIGH_RAM_SIZE);
     private boolean IME = false;
+    private int pendingInterrupts = 0;
+    private int serviceableInterrupts = 0;
+    private InstructionTracer tracer = null;
+    private OpcodeProfiler profiler = null;
+    private int idleLoopPeriod = 0;
+    private DecodeCache decodeCache = null;
+    private boolean operandFetched = false;
+    private int operand = 0;
+    private FusedPair[] fusedPairs = new FusedPair[0];
+    private Set<Family> fusionHeads = EnumSet.noneOf(Family.class);
+    private LongSupplier eventHorizon = null;
+    private InstructionHook instructionHook = null;
+    private final long[] interruptsRequested = new long[Interrupt
+            .values().length];
+    private final long[] interruptsServiced = new long[Interrupt
+            .values().length];
 
     private static final Opcode[] DIRECT_OPCODE_TABLE = buildOpcodeTable(
             Opcode.Kind.DIRECT);
     private static final Opcode[] PREFIXED_OPCODE_TABLE = buildOpcodeTable(
             Opcode.Kind.PREFIXED);
 
+    private static final Reg[] REGS = Reg.values();
     private static final int PREFIXED_ENCODING = 0xCB;
     private static final int INTERRUPTS_CYCLE = 5;
     private static final int MAX_PC16 = 0xFFFE;
+    private static final int MAX_IDLE_LOOP_SIZE = 10;
+    private static final int LDH_A_N8R_ENCODING = 0xF0;
+    private static final int LD_A_N16R_ENCODING = 0xFA;
+    private static final int INTERRUPTS_MASK = (1 << Interrupt
+            .values().length) - 1;
 
     @Override
     public void cycle(long cycle) {
@@ -86,7 +134,8 @@ public final class Cpu implements Component, Clocked {
         if (cycle == nextNonIdleCycle) {
             reallyCycle();
 
-        } else if (((IE & IF) != 0) && (Long.MAX_VALUE == nextNonIdleCycle)) {
+        } else if ((pendingInterrupts != 0)
+                && (Long.MAX_VALUE == nextNonIdleCycle)) {
             nextNonIdleCycle = cycle;
             reallyCycle();
         }
@@ -99,25 +148,32 @@ public final class Cpu implements Component, Clocked {
      * instruction
      */
     private void reallyCycle() {
-        if (IME && ((IE & IF) != 0)) {
+        idleLoopPeriod = 0;
+        if (serviceableInterrupts != 0) {
             IME = false;
-            int index = getIEIFIndex();
+            int index = Integer.numberOfTrailingZeros(serviceableInterrupts);
             IF = Bits.set(IF, index, false);
+            updateInterrupts();
+            interruptsServiced[index] += 1;
             push16(PC);
             PC = AddressMap.INTERRUPTS[index];
             this.nextNonIdleCycle += INTERRUPTS_CYCLE;
         } else {
-            int code = read8(PC);
-            Opcode opcode;
-            if (code == PREFIXED_ENCODING) {
-                int prefixedInstruction = read8AfterOpcode();
-                opcode = PREFIXED_OPCODE_TABLE[prefixedInstruction];
-            } else {
-                opcode = DIRECT_OPCODE_TABLE[code];
+            Opcode opcode = fetch();
+            if (tracer != null) {
+                trace(opcode);
+            }
+            if (profiler != null) {
+                profile(opcode);
+            } else if (tracer != null || !fusionHeads.contains(opcode.family)
+                    || !fuse(opcode)) {
+                dispatch(opcode);
             }
-            dispatch(opcode);
         }
 
+        if (instructionHook != null && nextNonIdleCycle != Long.MAX_VALUE) {
+            instructionHook.beforeInstruction(PC, nextNonIdleCycle);
+        }
     }
 
     @Override
@@ -149,12 +205,236 @@ public final class Cpu implements Component, Clocked {
 
         } else if (address == AddressMap.REG_IE) {
             IE = data;
+            updateInterrupts();
 
         } else if (address == AddressMap.REG_IF) {
             IF = data;
+            updateInterrupts();
         }
     }
 
+    /**
+     * Methode qui met à jour les masques des interruptions en attente (levées
+     * et activées) et des interruptions à traiter (en attente et IME vrai). A
+     * appeler après chaque modification de IE, IF ou IME
+     */
+    private void updateInterrupts() {
+        pendingInterrupts = IE & IF & INTERRUPTS_MASK;
+        serviceableInterrupts = IME ? pendingInterrupts : 0;
+    }
+
+    /**
+     * Écrit les registres, PC, SP, IE, IF, IME, le prochain cycle actif et la
+     * mémoire haute. Le cache d'instructions décodées n'en fait pas partie :
+     * ses entrées restent valides tant que leur banque est visible
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        bits8Register.saveState(buffer);
+        buffer.putShort((short) PC).putShort((short) SP).put((byte) IE)
+                .put((byte) IF).put((byte) (IME ? 1 : 0))
+                .putLong(nextNonIdleCycle);
+        HighRam.copyTo(0, buffer, HighRam.size());
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        bits8Register.loadState(buffer);
+        PC = Short.toUnsignedInt(buffer.getShort());
+        SP = Short.toUnsignedInt(buffer.getShort());
+        IE = Byte.toUnsignedInt(buffer.get());
+        IF = Byte.toUnsignedInt(buffer.get());
+        IME = buffer.get() != 0;
+        nextNonIdleCycle = buffer.getLong();
+        HighRam.copyFrom(buffer, 0, HighRam.size());
+        updateInterrupts();
+        idleLoopPeriod = 0;
+        operandFetched = false;
+    }
+
+    /**
+     * Methode qui retourne une vue en lecture seule, sans copie, de la mémoire
+     * haute (cf. Ram.asReadOnlyBuffer)
+     * 
+     * @return la vue de la mémoire haute
+     */
+    public ByteBuffer highRamView() {
+        return HighRam.asReadOnlyBuffer();
+    }
+
+    /**
+     * Methode qui indique si le processeur est arrêté (HALT) et qu'aucune
+     * interruption active n'est en attente, c-à-d que cycle ne fera rien tant
+     * qu'aucune interruption n'est levée
+     * 
+     * @return true si le processeur attend une interruption, false sinon
+     */
+    public boolean isHalted() {
+        return nextNonIdleCycle == Long.MAX_VALUE && pendingInterrupts == 0;
+    }
+
+    /**
+     * Methode qui retourne la durée (en cycles) d'un tour de la boucle
+     * d'attente active dans laquelle se trouve le processeur, ou 0 s'il n'est
+     * pas dans une telle boucle. Une boucle d'attente est une courte boucle
+     * (saut relatif en arrière) qui ne fait que relire LY ou STAT dans A et
+     * le tester, ou qui ne contient que le saut lui-même : tant que le
+     * registre lu ne change pas et qu'aucune interruption n'est traitée,
+     * chaque tour est identique au précédent
+     * 
+     * @return la durée d'un tour de boucle, ou 0
+     */
+    public int idleLoopPeriod() {
+        return serviceableInterrupts != 0 ? 0 : idleLoopPeriod;
+    }
+
+    /**
+     * Methode qui saute autant de tours complets de la boucle d'attente active
+     * que possible sans que le prochain tour ne commence après le cycle donné
+     * (prochain cycle auquel le registre lu peut changer ou une interruption
+     * être levée). Rien n'est sauté si le registre a pu changer depuis sa
+     * lecture au début du dernier tour, car le tour suivant ne serait alors
+     * plus forcément identique. Un seul essai est fait par tour détecté : la
+     * boucle sera à nouveau détectée à la fin du prochain tour exécuté
+     * 
+     * @param lastChange
+     *            le dernier cycle auquel le registre lu a pu changer
+     * @param limit
+     *            le cycle à ne pas dépasser
+     * @return le nombre de cycles sautés (un multiple de idleLoopPeriod)
+     */
+    public long skipIdleLoop(long lastChange, long limit) {
+        int period = idleLoopPeriod();
+        idleLoopPeriod = 0;
+        if (period == 0 || limit <= nextNonIdleCycle
+                || lastChange > nextNonIdleCycle - period) {
+            return 0;
+        }
+        long skipped = (limit - nextNonIdleCycle) / period * period;
+        nextNonIdleCycle += skipped;
+        return skipped;
+    }
+
+    /**
+     * Methode qui analyse la boucle commençant à l'adresse donnée et se
+     * terminant par le saut relatif en cours d'exécution, et retourne sa durée
+     * si c'est une boucle d'attente (cf. idleLoopPeriod)
+     * 
+     * @param target
+     *            l'adresse de début de la boucle
+     * @param jumpPc
+     *            l'adresse du saut qui termine la boucle
+     * @param jump
+     *            l'opcode du saut qui termine la boucle
+     * @return la durée d'un tour de boucle en cycles, ou 0 si ce n'est pas une
+     *         boucle d'attente
+     */
+    private int idleLoopCycles(int target, int jumpPc, Opcode jump) {
+        if (instructionHook != null || target < 0 || jumpPc - target > MAX_IDLE_LOOP_SIZE) {
+            return 0;
+        }
+        int cycles = jump.cycles + jump.additionalCycles;
+        if (target == jumpPc) {
+            return cycles;
+        }
+
+        // La boucle doit commencer par la lecture de LY ou STAT dans A
+        int address;
+        int pc;
+        int code = peek8(target);
+        if (code == LDH_A_N8R_ENCODING) {
+            address = AddressMap.REGS_START + peek8(target + 1);
+        } else if (code == LD_A_N16R_ENCODING) {
+            address = peek16(target + 1);
+        } else {
+            return 0;
+        }
+        if (address != AddressMap.REG_LY && address != AddressMap.REG_STAT) {
+            return 0;
+        }
+        cycles += DIRECT_OPCODE_TABLE[code].cycles;
+        pc = target + DIRECT_OPCODE_TABLE[code].totalBytes;
+
+        // Puis ne contenir que des instructions n'écrivant que dans A et F
+        while (pc < jumpPc) {
+            code = peek8(pc);
+            Opcode opcode = code == PREFIXED_ENCODING
+                    ? PREFIXED_OPCODE_TABLE[peek8(pc + 1)]
+                    : DIRECT_OPCODE_TABLE[code];
+            switch (opcode.family) {
+            case CP_A_N8:
+            case AND_A_N8:
+            case OR_A_N8:
+            case XOR_A_N8:
+            case CP_A_R8:
+            case AND_A_R8:
+            case OR_A_R8:
+            case XOR_A_R8:
+            case BIT_U3_R8:
+                break;
+            default:
+                return 0;
+            }
+            cycles += opcode.cycles;
+            pc += opcode.totalBytes;
+        }
+
+        return pc == jumpPc ? cycles : 0;
+    }
+
+    /**
+     * Registres 16 bits lisibles et modifiables par un débogueur (cf.
+     * debugRegister)
+     */
+    public enum DebugRegister {
+        AF, BC, DE, HL, SP, PC
+    }
+
+    /**
+     * Methode qui retourne la valeur du registre donné. A n'appeler qu'entre
+     * deux simulations (cf. GameBoy.runUntil), lorsque le processeur est entre
+     * deux instructions
+     * 
+     * @param r
+     *            le registre
+     * @return sa valeur (16 bits)
+     */
+    public int debugRegister(DebugRegister r) {
+        switch (r) {
+        case SP:
+            return SP;
+        case PC:
+            return PC;
+        default:
+            return reg16(Reg16.valueOf(r.name()));
+        }
+    }
+
+    /**
+     * Methode qui change la valeur du registre donné (les 4 bits de poids
+     * faible de F restent nuls). A n'appeler qu'entre deux simulations
+     * 
+     * @param r
+     *            le registre
+     * @param value
+     *            sa nouvelle valeur (16 bits)
+     */
+    public void setDebugRegister(DebugRegister r, int value) {
+        Preconditions.checkBits16(value);
+        switch (r) {
+        case SP:
+            SP = value;
+            break;
+        case PC:
+            PC = value;
+            operandFetched = false;
+            break;
+        default:
+            setReg16(Reg16.valueOf(r.name()), value);
+        }
+        idleLoopPeriod = 0;
+    }
+
     /**
      * Methode dont le seul but est de faciliter les tests
      * 
@@ -176,6 +456,297 @@ public final class Cpu implements Component, Clocked {
         return registerValue;
     }
 
+    /**
+     * Methode qui retourne l'opcode de l'instruction à l'adresse PC. Si un
+     * cache est attaché, l'instruction et son opérande immédiat sont pris
+     * dans le cache (sans accès au bus), ou y sont mis s'ils n'y sont pas
+     * encore
+     * 
+     * @return l'opcode de la prochaine instruction
+     */
+    private Opcode fetch() {
+        operandFetched = false;
+        if (decodeCache != null) {
+            long entry = decodeCache.lookup(PC);
+            if (entry != 0) {
+                operand = DecodeCache.operand(entry);
+                operandFetched = true;
+                return DecodeCache.opcode(entry);
+            }
+        }
+
+        int code = read8(PC);
+        Opcode opcode;
+        if (code == PREFIXED_ENCODING) {
+            int prefixedInstruction = read8AfterOpcode();
+            opcode = PREFIXED_OPCODE_TABLE[prefixedInstruction];
+        } else {
+            opcode = DIRECT_OPCODE_TABLE[code];
+        }
+
+        if (decodeCache != null
+                && decodeCache.cacheable(PC, opcode.totalBytes)) {
+            int immediate = 0;
+            if (opcode.kind == Kind.DIRECT && opcode.totalBytes == 2) {
+                immediate = read8AfterOpcode();
+            } else if (opcode.kind == Kind.DIRECT && opcode.totalBytes == 3) {
+                immediate = read16AfterOpcode();
+            }
+            decodeCache.store(PC, opcode, immediate);
+            operand = immediate;
+            operandFetched = true;
+        }
+        return opcode;
+    }
+
+    /**
+     * Attache la mémoire qui contient les instructions de 0x0000 à 0x7FFF
+     * (celle attachée au bus à ces adresses) : chaque instruction y est
+     * décodée une seule fois par banque et mise en cache, puis exécutée sans
+     * aucun accès au bus. Détache le cache si la mémoire donnée est null
+     * 
+     * @param code
+     *            la mémoire contenant les instructions, ou null
+     */
+    public void setCodeSource(BankedMemory code) {
+        if (decodeCache != null) {
+            decodeCache.detach();
+        }
+        decodeCache = code == null ? null : new DecodeCache(code);
+        operandFetched = false;
+    }
+
+    /**
+     * Methode qui choisit les paires d'instructions à exécuter d'un seul coup.
+     * Une paire n'est exécutée ainsi que si un horizon est donné (cf.
+     * setEventHorizon), que la seconde instruction est déjà dans le cache
+     * d'instructions décodées et qu'aucun traceur ni profileur n'est attaché
+     * 
+     * @param pairs
+     *            les paires à reconnaître (aucune si l'ensemble est vide)
+     */
+    public void setFusedPairs(Set<FusedPair> pairs) {
+        Objects.requireNonNull(pairs);
+        this.fusedPairs = pairs.toArray(new FusedPair[0]);
+        this.fusionHeads = fusionHeads();
+    }
+
+    /**
+     * Retourne les familles qui commencent une des paires choisies, ou aucune
+     * si un observateur d'instructions est attaché
+     */
+    private Set<Family> fusionHeads() {
+        Set<Family> heads = EnumSet.noneOf(Family.class);
+        if (instructionHook == null) {
+            for (FusedPair p : fusedPairs) {
+                heads.add(p.first);
+            }
+        }
+        return heads;
+    }
+
+    /**
+     * Interface d'un observateur appelé avant chaque instruction (cf.
+     * setInstructionHook)
+     *
+     */
+    public interface InstructionHook {
+
+        /**
+         * Methode appelée quand la prochaine instruction (ou interruption) est
+         * connue, avant qu'elle soit exécutée
+         * 
+         * @param pc
+         *            l'adresse de la prochaine instruction
+         * @param cycle
+         *            le cycle auquel elle sera exécutée
+         */
+        public abstract void beforeInstruction(int pc, long cycle);
+    }
+
+    /**
+     * Methode qui attache un observateur appelé avant chaque instruction, ou
+     * le détache si l'observateur donné est null. Tant qu'un observateur est
+     * attaché, chaque instruction est exécutée seule : ni paires (cf.
+     * setFusedPairs) ni saut des boucles d'attente. Sans observateur, le coût
+     * se limite à un test par instruction
+     * 
+     * @param hook
+     *            l'observateur, ou null
+     */
+    public void setInstructionHook(InstructionHook hook) {
+        this.instructionHook = hook;
+        this.fusionHeads = fusionHeads();
+        this.idleLoopPeriod = 0;
+    }
+
+    /**
+     * Methode qui donne au processeur le moyen de connaître le prochain cycle
+     * auquel un autre composant peut lever une interruption, changer un
+     * registre ou interrompre la simulation. La seconde instruction d'une
+     * paire n'est exécutée en avance que si elle doit commencer avant ce
+     * cycle : le résultat est alors identique à une exécution séparée
+     * 
+     * @param horizon
+     *            le fournisseur du prochain cycle actif, ou null pour ne plus
+     *            exécuter de paires
+     */
+    public void setEventHorizon(LongSupplier horizon) {
+        this.eventHorizon = horizon;
+    }
+
+    /**
+     * Methode qui tente d'exécuter l'opcode donné avec l'instruction qui le
+     * suit, si elles forment une des paires choisies et si c'est sans effet
+     * observable
+     * 
+     * @param first
+     *            l'opcode à l'adresse PC
+     * @return vrai ssi la paire a été exécutée (sinon rien n'a été fait)
+     */
+    private boolean fuse(Opcode first) {
+        if (eventHorizon == null || decodeCache == null) {
+            return false;
+        }
+        int secondPc = PC + first.totalBytes;
+        long entry = decodeCache.lookup(secondPc);
+        if (entry == 0) {
+            return false;
+        }
+        Opcode second = DecodeCache.opcode(entry);
+        FusedPair pair = null;
+        for (FusedPair p : fusedPairs) {
+            if (p.first == first.family && p.second == second.family) {
+                pair = p;
+            }
+        }
+        if (pair == null || nextNonIdleCycle + first.cycles >= eventHorizon
+                .getAsLong()) {
+            return false;
+        }
+
+        switch (pair) {
+        case LD_A_HLRU_LD_DER_A: {
+            // l'écriture en avance n'est sans effet que hors de l'OAM et des
+            // registres
+            int DE = reg16(Reg16.DE);
+            if (DE >= AddressMap.OAM_START) {
+                return false;
+            }
+            int HL = reg16(Reg16.HL);
+            int HLData = read8(HL);
+            bits8Register.set(Reg.A, HLData);
+            setReg16(Reg16.HL,
+                    Bits.clip(Short.SIZE, HL + extractHlIncrement(first)));
+            write8(DE, HLData);
+            this.nextNonIdleCycle += first.cycles + second.cycles;
+            this.PC = Bits.clip(16, secondPc + second.totalBytes);
+        }
+            break;
+        case DEC_R8_JR_CC_E8: {
+            Reg R8 = extractReg(first, 3);
+            int soustraction = Alu.sub(bits8Register.get(R8), 1);
+            setRegFromAlu(R8, soustraction);
+            combineAluFlags(soustraction, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU,
+                    FlagSrc.CPU);
+            fusedJump(first, secondPc, second, DecodeCache.operand(entry));
+        }
+            break;
+        case CP_A_N8_JR_CC_E8: {
+            int soustraction = Alu.sub(bits8Register.get(Reg.A),
+                    read8AfterOpcode());
+            setFlags(soustraction);
+            fusedJump(first, secondPc, second, DecodeCache.operand(entry));
+        }
+            break;
+        }
+        return true;
+    }
+
+    /**
+     * Methode qui termine l'exécution d'une paire dont la seconde instruction
+     * est un saut relatif conditionnel (comme le cas JR_CC_E8 de dispatch)
+     * 
+     * @param first
+     *            le premier opcode de la paire
+     * @param jumpPc
+     *            l'adresse du saut
+     * @param jump
+     *            l'opcode du saut
+     * @param e8
+     *            l'opérande du saut
+     */
+    private void fusedJump(Opcode first, int jumpPc, Opcode jump, int e8) {
+        int nextPC = jumpPc + jump.totalBytes;
+        this.nextNonIdleCycle += first.cycles + jump.cycles;
+        if (testCondi(jump)) {
+            int E8 = Bits.signExtend8(e8);
+            if (E8 < 0) {
+                idleLoopPeriod = idleLoopCycles(nextPC + E8, jumpPc, jump);
+            }
+            nextPC = nextPC + E8;
+            this.nextNonIdleCycle += jump.additionalCycles;
+        }
+        this.PC = Bits.clip(16, nextPC);
+    }
+
+    /**
+     * Attache un traceur qui enregistre chaque instruction avant son exécution,
+     * ou le détache si le traceur donné est null (aucun coût dans ce cas)
+     * 
+     * @param tracer
+     *            le traceur à utiliser, ou null
+     */
+    public void setTracer(InstructionTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * Methode qui enregistre l'état du processeur et l'opcode sur le point
+     * d'être exécuté dans le traceur
+     * 
+     * @param opcode
+     *            l'opcode qui va être exécuté
+     */
+    private void trace(Opcode opcode) {
+        long registers = 0;
+        for (Reg r : REGS) {
+            registers = (registers << Byte.SIZE) | bits8Register.get(r);
+        }
+        int encoding = opcode.kind == Kind.PREFIXED
+                ? opcode.encoding | InstructionTracer.PREFIXED_FLAG
+                : opcode.encoding;
+        tracer.record(nextNonIdleCycle, PC, SP, encoding, registers);
+    }
+
+    /**
+     * Attache un profileur qui compte les exécutions et les cycles de chaque
+     * opcode, ou le détache si le profileur donné est null (aucun coût dans ce
+     * cas)
+     * 
+     * @param profiler
+     *            le profileur à utiliser, ou null
+     */
+    public void setProfiler(OpcodeProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Methode qui exécute l'opcode donné et enregistre le nombre de cycles
+     * qu'il a consommé dans le profileur (0 pour HALT)
+     * 
+     * @param opcode
+     *            l'opcode à exécuter
+     */
+    private void profile(Opcode opcode) {
+        int pc = PC;
+        long start = nextNonIdleCycle;
+        dispatch(opcode);
+        long opcodeCycles = nextNonIdleCycle == Long.MAX_VALUE ? 0
+                : nextNonIdleCycle - start;
+        profiler.record(opcode, pc, opcodeCycles);
+    }
+
     /*
      * 
      * 
@@ -779,6 +1350,9 @@ public final class Cpu implements Component, Clocked {
             break;
         case JR_E8: {
             int E8 = Bits.signExtend8(read8AfterOpcode());
+            if (E8 < 0) {
+                idleLoopPeriod = idleLoopCycles(nextPC + E8, PC, opcode);
+            }
             nextPC = nextPC + E8;
         }
             break;
@@ -786,6 +1360,10 @@ public final class Cpu implements Component, Clocked {
             if (testCondi(opcode)) {
                 isConditional = true;
                 int E8 = Bits.signExtend8(read8AfterOpcode());
+                if (E8 < 0) {
+                    idleLoopPeriod = idleLoopCycles(nextPC + E8, PC,
+                            opcode);
+                }
                 nextPC = nextPC + E8;
             }
         }
@@ -839,10 +1417,12 @@ public final class Cpu implements Component, Clocked {
 //            }
             
             IME = Bits.test(opcode.encoding, 3);
+            updateInterrupts();
         }
             break;
         case RETI: {
             IME = true;
+            updateInterrupts();
             nextPC = pop16();
         }
             break;
@@ -852,8 +1432,11 @@ public final class Cpu implements Component, Clocked {
             this.nextNonIdleCycle = Long.MAX_VALUE;
         }
             break;
-        case STOP:
-            throw new Error("STOP is not implemented");
+        case STOP: {
+            // Traité comme HALT : le processeur attend une interruption
+            this.nextNonIdleCycle = Long.MAX_VALUE;
+        }
+            break;
 
         default: {
             throw new IllegalArgumentException(
@@ -925,6 +1508,32 @@ public final class Cpu implements Component, Clocked {
         return out;
     }
 
+    /**
+     * lit depuis le bus la valeur 8 bits à l'adresse donnée sans compter
+     * l'accès ni prévenir l'observateur (cf. Bus.peek) : pour examiner le code
+     * sans l'exécuter
+     * 
+     * @param address
+     *            l'adresse de la valeur
+     * @return la valeur 8 bits à cette adresse
+     */
+    private int peek8(int address) {
+        return bus.peek(address);
+    }
+
+    /**
+     * lit depuis le bus, comme peek8, la valeur 16 bits (little endian) à
+     * l'adresse donnée
+     * 
+     * @param address
+     *            l'adresse de l'octet de poids faible
+     * @return la valeur 16 bits à cette adresse
+     */
+    private int peek16(int address) {
+        return Bits.make16(peek8(Bits.clip(Short.SIZE, address + 1)),
+                peek8(address));
+    }
+
     /**
      * lit depuis le bus la valeur 8 bits à l'adresse contenue dans la paire de
      * registres HL
@@ -945,6 +1554,9 @@ public final class Cpu implements Component, Clocked {
      */
     private int read8AfterOpcode() {
         assert PC < MAX_VALUE : "PC doit etre inférieur a 0xFFFF pour la fonction read8AfterOpcode";
+        if (operandFetched) {
+            return operand;
+        }
         int out = read8(PC + 1);
         return out;
     }
@@ -976,6 +1588,9 @@ public final class Cpu implements Component, Clocked {
      */
     private int read16AfterOpcode() {
         assert PC < MAX_PC16 : "PC doit etre inférieur a 0xFFFE pour la fonction read16AfterOpcode";
+        if (operandFetched) {
+            return operand;
+        }
         int out = read16(PC + 1);
         return out;
     }
@@ -1458,6 +2073,28 @@ public final class Cpu implements Component, Clocked {
     public void requestInterrupt(Interrupt i) {
         int index = i.index();
         IF = Bits.set(IF, index, true);
+        updateInterrupts();
+        interruptsRequested[index] += 1;
+    }
+
+    /**
+     * Methode qui retourne le nombre de fois où chaque interruption a été
+     * levée (indexé par l'ordinal de l'interruption, sans copie)
+     * 
+     * @return le tableau des compteurs
+     */
+    public long[] interruptsRequested() {
+        return interruptsRequested;
+    }
+
+    /**
+     * Methode qui retourne le nombre de fois où chaque interruption a été
+     * traitée (indexé par l'ordinal de l'interruption, sans copie)
+     * 
+     * @return le tableau des compteurs
+     */
+    public long[] interruptsServiced() {
+        return interruptsServiced;
     }
 
     /**
@@ -1510,23 +2147,6 @@ public final class Cpu implements Component, Clocked {
         return value;
     }
 
-    /**
-     * Methode qui cherche l'index du bit valant 1 a la fois dans IE et IF (le
-     * plus petit) n'est utlisé que dans le cas ou il existe un index commune
-     * valant 1 entre IE et IF (donc le cas return = 0xFFFFFFFF n'arrivera
-     * jamais)
-     * 
-     * @return l'index du plus petit bit valant 1 a la fois dans IE et IF
-     */
-    private int getIEIFIndex() {
-        for (int i = 0; i < 6; ++i) {
-            if (Bits.test(IF, i) && (Bits.test(IE, i))) {
-                return i;
-            }
-        }
-        return MAX_VALUE;
-    }
-
     /**
      * 
      * 
@@ -1550,10 +2170,12 @@ public final class Cpu implements Component, Clocked {
 
     public void setIE(int a) {
         IE = a;
+        updateInterrupts();
     }
 
     public void setIF(int a) {
         IF = a;
+        updateInterrupts();
     }
 
     public void setF(boolean Z, boolean C) {
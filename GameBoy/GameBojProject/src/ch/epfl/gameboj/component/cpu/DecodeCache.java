@@ -0,0 +1,125 @@
+package ch.epfl.gameboj.component.cpu;
+
+import java.util.Objects;
+
+import ch.epfl.gameboj.component.BankedMemory;
+
+/**
+ * Classe qui garde, pour chaque adresse de la mémoire morte (0x0000 à 0x7FFF),
+ * la dernière instruction décodée à cette adresse (opcode et opérande
+ * immédiat), étiquetée par la banque qui était visible à ce moment. Une entrée
+ * n'est valide que si sa banque est encore celle visible : un changement de
+ * banque invalide donc toutes les entrées de la zone concernée, sans les
+ * parcourir.
+ *
+ * Format d'une entrée (long) : opérande (bits 0 à 15), ordinal de l'opcode
+ * (bits 16 à 31), numéro de banque + 1 (bits 32 à 63, 0 si l'entrée est vide).
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+final class DecodeCache {
+
+    private static final Opcode[] OPCODES = Opcode.values();
+    private static final int ZONES = 2;
+
+    private final BankedMemory code;
+    private final long[] entries = new long[ZONES * BankedMemory.BANK_SIZE];
+    private final long[] tags = new long[ZONES];
+
+    /**
+     * Construit un cache pour les instructions lues dans la mémoire donnée et
+     * s'enregistre auprès d'elle pour suivre les changements de banque
+     *
+     * @param code
+     *            la mémoire contenant les instructions
+     */
+    DecodeCache(BankedMemory code) {
+        this.code = Objects.requireNonNull(code);
+        code.setBankListener(this::updateBanks);
+        updateBanks();
+    }
+
+    /**
+     * Détache le cache de la mémoire (il ne suit plus les changements de
+     * banque et ne doit plus être utilisé)
+     */
+    void detach() {
+        code.setBankListener(null);
+    }
+
+    /**
+     * Retourne l'entrée valide à l'adresse donnée, ou 0 s'il n'y en a pas
+     *
+     * @param pc
+     *            l'adresse de l'instruction
+     * @return l'entrée, ou 0
+     */
+    long lookup(int pc) {
+        if (pc >= entries.length) {
+            return 0;
+        }
+        long entry = entries[pc];
+        long tag = tags[pc / BankedMemory.BANK_SIZE];
+        return tag != 0 && (entry >>> Integer.SIZE) == tag ? entry : 0;
+    }
+
+    /**
+     * Indique si l'instruction de la taille donnée à l'adresse donnée peut
+     * être mise en cache, c-à-d si elle se trouve entièrement dans une zone
+     * dont la banque est connue
+     *
+     * @param pc
+     *            l'adresse de l'instruction
+     * @param totalBytes
+     *            la taille de l'instruction en octets
+     * @return vrai ssi l'instruction peut être mise en cache
+     */
+    boolean cacheable(int pc, int totalBytes) {
+        return pc < entries.length && tags[pc / BankedMemory.BANK_SIZE] != 0
+                && pc % BankedMemory.BANK_SIZE + totalBytes <= BankedMemory.BANK_SIZE;
+    }
+
+    /**
+     * Met en cache l'instruction décodée à l'adresse donnée (qui doit être
+     * cacheable)
+     *
+     * @param pc
+     *            l'adresse de l'instruction
+     * @param opcode
+     *            l'opcode décodé
+     * @param operand
+     *            l'opérande immédiat (0 s'il n'y en a pas)
+     */
+    void store(int pc, Opcode opcode, int operand) {
+        entries[pc] = (tags[pc / BankedMemory.BANK_SIZE] << Integer.SIZE)
+                | (opcode.ordinal() << Short.SIZE) | operand;
+    }
+
+    /**
+     *
+     * @param entry
+     *            une entrée valide
+     * @return l'opcode de l'entrée
+     */
+    static Opcode opcode(long entry) {
+        return OPCODES[(int) entry >>> Short.SIZE];
+    }
+
+    /**
+     *
+     * @param entry
+     *            une entrée valide
+     * @return l'opérande immédiat de l'entrée
+     */
+    static int operand(long entry) {
+        return (int) entry & 0xFFFF;
+    }
+
+    private void updateBanks() {
+        for (int zone = 0; zone < ZONES; ++zone) {
+            tags[zone] = code.bank(zone * BankedMemory.BANK_SIZE) + 1L;
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+package ch.epfl.gameboj.component.cpu;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+import ch.epfl.gameboj.Preconditions;
+
+/**
+ * Classe qui enregistre les dernières instructions exécutées par le Cpu (PC,
+ * SP, opcode, registres et cycle) dans un tampon circulaire alloué une seule
+ * fois hors du tas. Lorsque le tampon est plein, les plus anciennes
+ * instructions sont écrasées.
+ *
+ * Format d'un enregistrement (24 octets, little endian) : cycle (8), registres
+ * A F B C D E H L (8), PC (2), SP (2), opcode (2, bit 8 à 1 si préfixé), 2
+ * octets inutilisés.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+public final class InstructionTracer {
+
+    public static final int RECORD_SIZE = 24;
+    public static final int PREFIXED_FLAG = 0x100;
+
+    private static final int MAGIC = 0x52544247; // "GBTR"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private long count = 0;
+
+    /**
+     * Construit un traceur pouvant retenir au plus le nombre d'instructions
+     * donné
+     *
+     * @param capacity
+     *            le nombre d'instructions gardées (strictement positif)
+     */
+    public InstructionTracer(int capacity) {
+        Preconditions.checkArgument(
+                capacity > 0 && capacity <= Integer.MAX_VALUE / RECORD_SIZE);
+        this.capacity = capacity;
+        this.buffer = ByteBuffer.allocateDirect(capacity * RECORD_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Enregistre une instruction (appelée par le Cpu juste avant son exécution)
+     *
+     * @param cycle
+     *            le cycle auquel l'instruction est exécutée
+     * @param pc
+     *            l'adresse de l'instruction
+     * @param sp
+     *            la valeur du pointeur de pile
+     * @param opcode
+     *            l'encodage de l'opcode (avec PREFIXED_FLAG s'il est préfixé)
+     * @param registers
+     *            les registres A F B C D E H L, A dans l'octet de poids fort
+     */
+    void record(long cycle, int pc, int sp, int opcode, long registers) {
+        int offset = (int) (count % capacity) * RECORD_SIZE;
+        buffer.putLong(offset, cycle);
+        buffer.putLong(offset + 8, registers);
+        buffer.putShort(offset + 16, (short) pc);
+        buffer.putShort(offset + 18, (short) sp);
+        buffer.putShort(offset + 20, (short) opcode);
+        count += 1;
+    }
+
+    /**
+     *
+     * @return le nombre total d'instructions enregistrées depuis le début (y
+     *         compris celles qui ont été écrasées)
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     *
+     * @return le nombre d'instructions actuellement gardées dans le tampon
+     */
+    public int size() {
+        return (int) Math.min(count, capacity);
+    }
+
+    /**
+     * Vide le tampon
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Écrit les instructions gardées dans le fichier donné, de la plus
+     * ancienne à la plus récente, précédées d'un en-tête de 20 octets (magic,
+     * version, taille d'un enregistrement, nombre d'enregistrements sur 8
+     * octets). Les octets sont écrits directement depuis le tampon, sans copie
+     * intermédiaire
+     *
+     * @param file
+     *            le fichier dans lequel écrire (écrasé s'il existe)
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie
+     */
+    public void dump(Path file) throws IOException {
+        Objects.requireNonNull(file);
+        int size = size();
+        int oldest = count > capacity ? (int) (count % capacity) : 0;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE)
+                .putLong(size).flip();
+
+        ByteBuffer older = buffer.duplicate();
+        older.limit(capacity * RECORD_SIZE).position(oldest * RECORD_SIZE);
+        if (size < capacity) {
+            older.limit(size * RECORD_SIZE);
+        }
+        ByteBuffer newer = buffer.duplicate();
+        newer.limit(size < capacity ? 0 : oldest * RECORD_SIZE).position(0);
+
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] parts = new ByteBuffer[] { header, older, newer };
+            while (newer.hasRemaining() || older.hasRemaining()
+                    || header.hasRemaining()) {
+                channel.write(parts);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+package ch.epfl.gameboj.component.cpu;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+import ch.epfl.gameboj.Preconditions;
+
+/**
+ * Classe qui compte, pour chaque opcode (direct et préfixé), le nombre
+ * d'exécutions et le nombre de cycles consommés, ainsi que le nombre de cycles
+ * passés à chaque adresse (PC). Les compteurs sont des tableaux de long
+ * indexés par l'ordinal de l'opcode ou par l'adresse.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+public final class OpcodeProfiler {
+
+    private static final Opcode[] OPCODES = Opcode.values();
+    private static final int ADDRESS_SPACE = 0x10000;
+
+    private final long[] executions = new long[OPCODES.length];
+    private final long[] cycles = new long[OPCODES.length];
+    private final long[] cyclesByPc = new long[ADDRESS_SPACE];
+    private final int topK;
+
+    /**
+     * Construit un profileur dont le rapport contient au plus topK adresses
+     * "chaudes"
+     *
+     * @param topK
+     *            le nombre d'adresses gardées dans le rapport (strictement
+     *            positif)
+     */
+    public OpcodeProfiler(int topK) {
+        Preconditions.checkArgument(topK > 0);
+        this.topK = topK;
+    }
+
+    /**
+     * Enregistre l'exécution d'une instruction (appelée par le Cpu)
+     *
+     * @param opcode
+     *            l'opcode exécuté
+     * @param pc
+     *            l'adresse de l'instruction
+     * @param opcodeCycles
+     *            le nombre de cycles consommés par l'instruction
+     */
+    void record(Opcode opcode, int pc, long opcodeCycles) {
+        int index = opcode.ordinal();
+        executions[index] += 1;
+        cycles[index] += opcodeCycles;
+        cyclesByPc[pc] += opcodeCycles;
+    }
+
+    /**
+     *
+     * @param opcode
+     *            l'opcode voulu
+     * @return le nombre d'exécutions de cet opcode
+     */
+    public long executions(Opcode opcode) {
+        return executions[opcode.ordinal()];
+    }
+
+    /**
+     *
+     * @param opcode
+     *            l'opcode voulu
+     * @return le nombre de cycles consommés par cet opcode
+     */
+    public long cycles(Opcode opcode) {
+        return cycles[opcode.ordinal()];
+    }
+
+    /**
+     * Retourne les adresses où le plus de cycles ont été passés, de la plus
+     * chaude à la moins chaude (au plus topK adresses). Les adresses sont
+     * triées avec un tas de taille bornée à topK
+     *
+     * @return les adresses les plus chaudes
+     */
+    public int[] hotPcs() {
+        PriorityQueue<Integer> heap = new PriorityQueue<>(topK + 1,
+                (a, b) -> Long.compare(cyclesByPc[a], cyclesByPc[b]));
+        for (int pc = 0; pc < ADDRESS_SPACE; ++pc) {
+            if (cyclesByPc[pc] == 0) {
+                continue;
+            }
+            heap.add(pc);
+            if (heap.size() > topK) {
+                heap.poll();
+            }
+        }
+
+        int[] hot = new int[heap.size()];
+        for (int i = hot.length - 1; i >= 0; --i) {
+            hot[i] = heap.poll();
+        }
+        return hot;
+    }
+
+    /**
+     * Remet tous les compteurs à zéro
+     */
+    public void clear() {
+        Arrays.fill(executions, 0);
+        Arrays.fill(cycles, 0);
+        Arrays.fill(cyclesByPc, 0);
+    }
+
+    /**
+     * Écrit le rapport au format CSV dans le fichier donné : d'abord
+     * l'histogramme des opcodes exécutés au moins une fois (triés par cycles
+     * décroissants), puis les adresses les plus chaudes
+     *
+     * @param file
+     *            le fichier dans lequel écrire le rapport
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie
+     */
+    public void export(Path file) throws IOException {
+        Objects.requireNonNull(file);
+
+        List<Opcode> used = new ArrayList<>();
+        for (Opcode o : OPCODES) {
+            if (executions[o.ordinal()] != 0) {
+                used.add(o);
+            }
+        }
+        used.sort((a, b) -> Long.compare(cycles[b.ordinal()],
+                cycles[a.ordinal()]));
+
+        try (Writer out = Files.newBufferedWriter(file,
+                StandardCharsets.UTF_8)) {
+            out.write("opcode,kind,encoding,executions,cycles\n");
+            for (Opcode o : used) {
+                out.write(String.format("%s,%s,0x%02X,%d,%d%n", o, o.kind,
+                        o.encoding, executions[o.ordinal()],
+                        cycles[o.ordinal()]));
+            }
+            out.write("\npc,cycles\n");
+            for (int pc : hotPcs()) {
+                out.write(String.format("0x%04X,%d%n", pc, cyclesByPc[pc]));
+            }
+        }
+    }
+
+}
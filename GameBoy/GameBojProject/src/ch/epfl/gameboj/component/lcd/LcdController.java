@@ -1,10 +1,12 @@
 package ch.epfl.gameboj.component.lcd;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
 
 import ch.epfl.gameboj.AddressMap;
 import ch.epfl.gameboj.Bus;
@@ -16,9 +18,12 @@ import ch.epfl.gameboj.bits.BitVector;
 import ch.epfl.gameboj.bits.Bits;
 import ch.epfl.gameboj.component.Clocked;
 import ch.epfl.gameboj.component.Component;
+import ch.epfl.gameboj.component.Stateful;
 import ch.epfl.gameboj.component.cpu.Cpu;
 import ch.epfl.gameboj.component.cpu.Cpu.Interrupt;
 import ch.epfl.gameboj.component.memory.Ram;
+import ch.epfl.gameboj.component.memory.RamController;
+import ch.epfl.gameboj.jfr.FrameRendered;
 
 /**
  * 
@@ -29,17 +34,17 @@ import ch.epfl.gameboj.component.memory.Ram;
  * @author Marc Watine (269508)
  */
 
-public final class LcdController implements Clocked, Component {
+public final class LcdController implements Clocked, Component, Stateful {
 
     // Public car utilisé dans plusieus autres classes
     public static final int LCD_WIDTH = 160;
     public static final int LCD_HEIGHT = 144;
+    public static final int IMAGE_DRAW = 17556;
 
     private static final int BG_SIZE = 256;
     private static final int TILE_LINE = 8;
     private static final int TILE_SIZE = 16;
     private static final int TILE_BY_BG = 32;
-    private static final int IMAGE_DRAW = 17556;
     private static final int LINE_DRAW_CYCLE = 114;
     private static final int END_IMAGE_DRAW = 16416;
     private static final int TILE_SOURCE_NUMBER = 128;
@@ -51,7 +56,7 @@ public final class LcdController implements Clocked, Component {
     private static final int MODE3_DURATION = 43;
     private static final int MODE0_DURATION = 51;
     private static final int MAX_SPRITE = 10;
-    private static final int MAX_COUNTER_OF_COPY = 160;
+    private static final int DMA_DURATION = AddressMap.OAM_RAM_SIZE;
     private static final int NUMBER_SPRITE = 40;
     private static final BitVector EMPTY_VECTOR = new BitVector(LCD_WIDTH,
             false);
@@ -65,14 +70,27 @@ public final class LcdController implements Clocked, Component {
     private final Ram ramVideo;
     private final Ram ramSprite;
     private final RegisterFile<Reg> register = new RegisterFile<>(Reg.values());
+    private final List<RamController> dmaSources = new ArrayList<>();
+    private final List<Consumer<LcdImage>> frameListeners = new ArrayList<>();
+    private final List<Runnable> frameEndListeners = new ArrayList<>();
 
     private Bus bus;
     private LcdImage.Builder nextImageBuilder;
     private LcdImage nextImage;
+    private long frameCount = 0;
+    private int frameSkip = 0;
+    private int skippedFrames = 0;
+    private boolean renderCurrentFrame = true;
+    private boolean renderingEnabled = true;
+    private FrameRendered frameEvent = null;
+    private long frameRenderNanos = 0;
     private int winY = 0;
     private int indexLine = 0;
-    private boolean copyActive = false;
-    private int counterOfCopy = 0;
+    private long currentCycle = 0;
+    private long nextDmaCycle = Long.MAX_VALUE;
+    private long dmaEndCycle = 0;
+    private long lastEventCycle = 0;
+    private long dmaTransfers = 0;
     private long nextNonIdleCycle = Long.MAX_VALUE;
     private long lcdOnCycle = Long.MAX_VALUE;
 
@@ -144,6 +162,18 @@ public final class LcdController implements Clocked, Component {
         bus.attach(this);
     }
 
+    /**
+     * Déclare une mémoire vive (par ex. la workRam) dans laquelle une copie
+     * directe vers la mémoire OAM peut être faite sans passer par le bus
+     * 
+     * @param source
+     *            le contrôleur de la mémoire source
+     */
+    public void attachDmaSource(RamController source) {
+        Objects.requireNonNull(source);
+        dmaSources.add(source);
+    }
+
     @Override
     public int read(int address) {
         Preconditions.checkBits16(address);
@@ -159,7 +189,10 @@ public final class LcdController implements Clocked, Component {
             } else {
                 if (address >= AddressMap.OAM_START
                         && address < AddressMap.OAM_END) {
-                    return this.ramSprite.read(address - AddressMap.OAM_START);
+                    // La mémoire OAM n'est pas accessible pendant la copie
+                    return dmaActive() ? 0xFF
+                            : this.ramSprite.read(
+                                    address - AddressMap.OAM_START);
                 } else {
                     return NO_DATA;
                 }
@@ -210,11 +243,10 @@ public final class LcdController implements Clocked, Component {
             }
                 break;
             case regMap.DMA: {
-                // Active la copie directe dans la mémoire OAM (spriteRam)
-                if (!copyActive) {
-                    this.copyActive = true;
-                    this.counterOfCopy = 0;
-                }
+                // Planifie la copie directe dans la mémoire OAM (spriteRam)
+                // au cycle suivant ; une écriture pendant une copie la
+                // redémarre depuis la nouvelle source
+                this.nextDmaCycle = currentCycle + 1;
             }
 
             default: {
@@ -224,7 +256,8 @@ public final class LcdController implements Clocked, Component {
             }
         }
 
-        if (address >= AddressMap.OAM_START && address < AddressMap.OAM_END) {
+        if (address >= AddressMap.OAM_START && address < AddressMap.OAM_END
+                && !dmaActive()) {
             this.ramSprite.write(address - AddressMap.OAM_START, data);
         }
 
@@ -232,6 +265,7 @@ public final class LcdController implements Clocked, Component {
 
     @Override
     public void cycle(long cycle) {
+        this.currentCycle = cycle;
 
         // Allumage de l'écran
         if (this.nextNonIdleCycle == Long.MAX_VALUE
@@ -240,15 +274,12 @@ public final class LcdController implements Clocked, Component {
             this.nextNonIdleCycle = 0;
         }
 
-        // Copie direct de la spriteRam
-        if (this.copyActive && this.counterOfCopy < MAX_COUNTER_OF_COPY) {
-            this.write(AddressMap.OAM_START + this.counterOfCopy, bus.read(
-                    (register.get(Reg.DMA) << Byte.SIZE) + this.counterOfCopy));
-            this.counterOfCopy += 1;
-            if (this.counterOfCopy == MAX_COUNTER_OF_COPY) {
-                this.copyActive = false;
-                this.counterOfCopy = 0;
-            }
+        // Copie direct de la spriteRam, faite en une seule fois au cycle
+        // planifié lors de l'écriture dans DMA
+        if (cycle == this.nextDmaCycle) {
+            this.transferDma();
+            this.nextDmaCycle = Long.MAX_VALUE;
+            this.dmaEndCycle = cycle + DMA_DURATION;
         }
 
         // Calcul si il y a quelque chose à faire à ce cycle, si oui appelle la
@@ -256,6 +287,7 @@ public final class LcdController implements Clocked, Component {
         if ((cycle - this.lcdOnCycle) == this.nextNonIdleCycle) {
             indexLine = ((((int) ((cycle - this.lcdOnCycle))) % IMAGE_DRAW)
                     / LINE_DRAW_CYCLE);
+            this.lastEventCycle = cycle;
             this.reallyCycle();
         }
     }
@@ -274,8 +306,21 @@ public final class LcdController implements Clocked, Component {
         if (this.nextNonIdleCycle % (IMAGE_DRAW) >= END_IMAGE_DRAW) {
             if (this.nextNonIdleCycle % (IMAGE_DRAW) == END_IMAGE_DRAW) {
                 this.changeMode(1);
-                this.nextImage = this.nextImageBuilder.build();
                 this.winY = 0;
+                this.frameCount += 1;
+                for (int i = 0; i < frameEndListeners.size(); ++i) {
+                    frameEndListeners.get(i).run();
+                }
+                if (this.renderCurrentFrame) {
+                    LcdImage previousImage = this.nextImage;
+                    this.nextImage = this.nextImageBuilder.build();
+                    if (this.frameEvent != null) {
+                        this.commitFrameEvent(previousImage);
+                    }
+                    for (int i = 0; i < frameListeners.size(); ++i) {
+                        frameListeners.get(i).accept(nextImage);
+                    }
+                }
             }
 
             this.nextNonIdleCycle += LINE_DRAW_CYCLE;
@@ -286,8 +331,27 @@ public final class LcdController implements Clocked, Component {
 
         // Cas ou l'image est complétement déssiné et prête a être afficher a
         // l'écran
+        // (sauf si elle doit être sautée, cf. setFrameSkip et
+        // setRenderingEnabled)
         if (this.nextNonIdleCycle % IMAGE_DRAW == 0) {
-            this.nextImageBuilder = new LcdImage.Builder(LCD_WIDTH, LCD_HEIGHT);
+            this.renderCurrentFrame = this.renderingEnabled
+                    && this.skippedFrames >= this.frameSkip;
+            if (this.renderCurrentFrame) {
+                this.skippedFrames = 0;
+                this.nextImageBuilder = new LcdImage.Builder(LCD_WIDTH,
+                        LCD_HEIGHT);
+                // L'image n'est mesurée que si l'évènement JFR est enregistré
+                FrameRendered event = new FrameRendered();
+                if (event.isEnabled()) {
+                    event.begin();
+                    this.frameEvent = event;
+                    this.frameRenderNanos = 0;
+                } else {
+                    this.frameEvent = null;
+                }
+            } else if (this.renderingEnabled) {
+                this.skippedFrames += 1;
+            }
         }
 
         switch (((int) this.nextNonIdleCycle % (IMAGE_DRAW))
@@ -301,8 +365,19 @@ public final class LcdController implements Clocked, Component {
 
         case MODE2_DURATION:
             this.nextNonIdleCycle += MODE3_DURATION;
-            this.nextImageBuilder.setLine(register.get(Reg.LY),
-                    this.computeLine(register.get(Reg.LY)));
+            if (this.renderCurrentFrame && this.frameEvent != null) {
+                long start = System.nanoTime();
+                this.nextImageBuilder.setLine(register.get(Reg.LY),
+                        this.computeLine(register.get(Reg.LY)));
+                this.frameRenderNanos += System.nanoTime() - start;
+            } else if (this.renderCurrentFrame) {
+                this.nextImageBuilder.setLine(register.get(Reg.LY),
+                        this.computeLine(register.get(Reg.LY)));
+            } else if (this.windowVisible(register.get(Reg.LY))) {
+                // la ligne n'est pas dessinée mais la fenêtre avance quand
+                // même
+                this.winY += 1;
+            }
             this.changeMode(3);
             break;
 
@@ -315,6 +390,184 @@ public final class LcdController implements Clocked, Component {
 
     }
 
+    /**
+     * Méthode qui copie d'un bloc les 160 octets de la page source (donnée par
+     * le registre DMA) dans la mémoire OAM. La page est résolue une seule fois
+     * : si elle se trouve entièrement dans la ramVideo ou dans une des sources
+     * déclarées, la copie est directe, sinon on passe par le bus
+     */
+    private void transferDma() {
+        int source = register.get(Reg.DMA) << Byte.SIZE;
+        dmaTransfers += 1;
+
+        if (source >= AddressMap.VIDEO_RAM_START
+                && source + DMA_DURATION <= AddressMap.VIDEO_RAM_END) {
+            ramVideo.copyTo(source - AddressMap.VIDEO_RAM_START, ramSprite, 0,
+                    DMA_DURATION);
+            return;
+        }
+
+        for (int i = 0; i < dmaSources.size(); ++i) {
+            if (dmaSources.get(i).copyTo(source, ramSprite, 0, DMA_DURATION)) {
+                return;
+            }
+        }
+
+        for (int i = 0; i < DMA_DURATION; ++i) {
+            ramSprite.write(i, bus.read(source + i));
+        }
+    }
+
+    /**
+     * Méthode qui termine et enregistre l'évènement JFR de l'image qui vient
+     * d'être construite
+     * 
+     * @param previousImage
+     *            l'image précédente (null s'il n'y en a pas), pour compter les
+     *            lignes modifiées
+     */
+    private void commitFrameEvent(LcdImage previousImage) {
+        FrameRendered event = this.frameEvent;
+        this.frameEvent = null;
+        event.end();
+        event.frame = this.frameCount;
+        event.renderDuration = this.frameRenderNanos;
+        if (event.shouldCommit()) {
+            int dirtyLines = 0;
+            for (int i = 0; i < LCD_HEIGHT; ++i) {
+                if (previousImage == null || !previousImage.line(i)
+                        .equals(this.nextImage.line(i))) {
+                    dirtyLines += 1;
+                }
+            }
+            event.dirtyLines = dirtyLines;
+            event.commit();
+        }
+    }
+
+    /**
+     * Méthode qui retourne le dernier cycle auquel le LcdController a changé
+     * de mode (et donc auquel LY et STAT ont pu changer)
+     * 
+     * @return le dernier cycle actif
+     */
+    public long lastEventCycle() {
+        return this.lastEventCycle;
+    }
+
+    /**
+     * Méthode qui retourne le prochain cycle auquel le LcdController a
+     * quelque chose à faire (changement de mode, copie DMA ou allumage de
+     * l'écran), et donc le premier cycle auquel il peut lever une
+     * interruption. Entre deux de ces cycles, cycle ne fait rien et peut être
+     * sauté
+     * 
+     * @return le prochain cycle actif, ou Long.MAX_VALUE s'il n'y en a pas
+     */
+    public long nextEventCycle() {
+        long next = this.nextDmaCycle;
+        if (this.nextNonIdleCycle != Long.MAX_VALUE) {
+            next = Math.min(next, this.lcdOnCycle + this.nextNonIdleCycle);
+        } else if (Bits.test(register.get(Reg.LCDC), LCDC.LCD_STATUS)) {
+            // l'écran sera allumé dès le prochain appel à cycle
+            next = this.currentCycle;
+        }
+        return next;
+    }
+
+    /**
+     * Méthode qui indique si une copie DMA est en cours, c-à-d si le cpu est
+     * encore privé d'accès à la mémoire OAM
+     * 
+     * @return true si la copie est en cours, false sinon
+     */
+    private boolean dmaActive() {
+        return currentCycle < dmaEndCycle;
+    }
+
+    /**
+     * Ajoute un auditeur appelé à chaque fois qu'une image est terminée et
+     * dessinée (au début du mode 1), avec l'image en question (sans copie) ;
+     * les images sautées (cf. setFrameSkip et setRenderingEnabled) ne lui
+     * sont pas transmises
+     * 
+     * @param listener
+     *            l'auditeur à appeler
+     */
+    public void addFrameListener(Consumer<LcdImage> listener) {
+        Objects.requireNonNull(listener);
+        frameListeners.add(listener);
+    }
+
+    /**
+     * Retire un auditeur ajouté avec addFrameListener
+     * 
+     * @param listener
+     *            l'auditeur à retirer
+     */
+    public void removeFrameListener(Consumer<LcdImage> listener) {
+        frameListeners.remove(listener);
+    }
+
+    /**
+     * Ajoute un auditeur appelé à la fin de chaque image (au début du mode
+     * 1), qu'elle soit dessinée ou sautée
+     * 
+     * @param listener
+     *            l'auditeur à appeler
+     */
+    public void addFrameEndListener(Runnable listener) {
+        Objects.requireNonNull(listener);
+        frameEndListeners.add(listener);
+    }
+
+    /**
+     * Définit le nombre d'images à sauter entre deux images dessinées (0 par
+     * défaut, c-à-d toutes les images sont dessinées). Les images sautées
+     * gardent exactement le même comportement (modes, LY, STAT,
+     * interruptions) mais leurs lignes ne sont pas calculées, et les auditeurs
+     * ne sont pas appelés pour elles
+     * 
+     * @param skip
+     *            le nombre d'images à sauter (positif ou nul)
+     */
+    public void setFrameSkip(int skip) {
+        Preconditions.checkArgument(skip >= 0);
+        this.frameSkip = skip;
+    }
+
+    /**
+     * Active ou désactive complètement le dessin des images (activé par
+     * défaut). Une fois désactivé, aucune ligne n'est plus calculée (fond,
+     * fenêtre et sprites) mais les modes, LY/LYC, STAT, les interruptions et
+     * winY évoluent exactement comme avant ; currentImage retourne alors la
+     * dernière image dessinée. Le changement prend effet à l'image suivante
+     * 
+     * @param enabled
+     *            true pour dessiner les images, false sinon
+     */
+    public void setRenderingEnabled(boolean enabled) {
+        this.renderingEnabled = enabled;
+    }
+
+    /**
+     * Methode qui retourne le nombre de copies DMA effectuées depuis le début
+     * 
+     * @return le nombre de copies DMA
+     */
+    public long dmaTransfers() {
+        return dmaTransfers;
+    }
+
+    /**
+     * Methode qui retourne le nombre d'images terminées depuis le début
+     * 
+     * @return le nombre d'images construites
+     */
+    public long frameCount() {
+        return frameCount;
+    }
+
     /**
      * Methode qui retourne l'image actuelle qui vient d'être construite
      * 
@@ -325,6 +578,86 @@ public final class LcdController implements Clocked, Component {
         return this.nextImage == null ? EMPTY_IMAGE : nextImage;
     }
 
+    /**
+     * Methode qui retourne une vue en lecture seule, sans copie, de la
+     * ramVideo (cf. Ram.asReadOnlyBuffer)
+     * 
+     * @return la vue de la ramVideo
+     */
+    public ByteBuffer videoRamView() {
+        return ramVideo.asReadOnlyBuffer();
+    }
+
+    /**
+     * Methode qui retourne une vue en lecture seule, sans copie, de la mémoire
+     * OAM, y compris pendant une copie DMA (pendant laquelle le bus n'y donne
+     * pas accès)
+     * 
+     * @return la vue de la mémoire OAM
+     */
+    public ByteBuffer oamView() {
+        return ramSprite.asReadOnlyBuffer();
+    }
+
+    /**
+     * Écrit les registres, la ramVideo, la mémoire OAM, l'état du dessin et
+     * de la copie DMA, ainsi que la dernière image et l'image en cours de
+     * construction (s'il y en a)
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        register.saveState(buffer);
+        ramVideo.copyTo(0, buffer, ramVideo.size());
+        ramSprite.copyTo(0, buffer, ramSprite.size());
+        buffer.putLong(frameCount).putInt(skippedFrames)
+                .put((byte) (renderCurrentFrame ? 1 : 0)).putInt(winY)
+                .putInt(indexLine).putLong(currentCycle).putLong(nextDmaCycle)
+                .putLong(dmaEndCycle).putLong(lastEventCycle)
+                .putLong(nextNonIdleCycle).putLong(lcdOnCycle);
+        saveImage(buffer, nextImage);
+        saveImage(buffer,
+                nextImageBuilder == null ? null : nextImageBuilder.build());
+    }
+
+    /**
+     * Restaure l'état écrit par saveState ; l'image en cours de construction
+     * n'est pas mesurée par l'évènement JFR de l'image
+     */
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        register.loadState(buffer);
+        ramVideo.copyFrom(buffer, 0, ramVideo.size());
+        ramSprite.copyFrom(buffer, 0, ramSprite.size());
+        frameCount = buffer.getLong();
+        skippedFrames = buffer.getInt();
+        renderCurrentFrame = buffer.get() != 0;
+        winY = buffer.getInt();
+        indexLine = buffer.getInt();
+        currentCycle = buffer.getLong();
+        nextDmaCycle = buffer.getLong();
+        dmaEndCycle = buffer.getLong();
+        lastEventCycle = buffer.getLong();
+        nextNonIdleCycle = buffer.getLong();
+        lcdOnCycle = buffer.getLong();
+        nextImage = loadImage(buffer);
+        LcdImage building = loadImage(buffer);
+        nextImageBuilder = building == null ? null
+                : new LcdImage.Builder(building);
+        frameEvent = null;
+    }
+
+    private static void saveImage(ByteBuffer buffer, LcdImage image) {
+        buffer.put((byte) (image == null ? 0 : 1));
+        if (image != null) {
+            image.writeTo(buffer);
+        }
+    }
+
+    private static LcdImage loadImage(ByteBuffer buffer) {
+        return buffer.get() == 0 ? null
+                : LcdImage.readFrom(buffer, LCD_WIDTH, LCD_HEIGHT);
+    }
+
     /**
      * Méthode qui permet de changer le mode/état du lcdControler et qui lance
      * les intéreputions nécessaire en fonctions de certaines conditions
@@ -549,7 +882,6 @@ public final class LcdController implements Clocked, Component {
                                                                   // ZELDA, VU
                                                                   // AVEC
                                                                   // L'INSTRUCTEUR
-        int wy = register.get(Reg.WY);
 
         // SPRITES
         List<LcdImageLine> composeSpriteLine = null;
@@ -592,8 +924,7 @@ public final class LcdController implements Clocked, Component {
         }
 
         // DESSIN DE LA FENETRE
-        if (register.testBit(Reg.LCDC, LCDC.WIN) && wxPrime >= 0
-                && wxPrime < LCD_WIDTH && wy <= ligne) {
+        if (windowVisible(ligne)) {
             for (int i = 0; i < TILE_BY_BG; ++i) {
                 int[] value = getMsbLsb(tileLineWD, lineInTileWD, displayDataWD,
                         i);
@@ -621,6 +952,20 @@ public final class LcdController implements Clocked, Component {
 
     }
 
+    /**
+     * Méthode qui indique si la fenêtre est visible sur la ligne donnée (dans
+     * ce cas winY avance d'une ligne)
+     * 
+     * @param ligne
+     *            l'index de la ligne en cours de dessin
+     * @return true si la fenêtre est dessinée sur cette ligne, false sinon
+     */
+    private boolean windowVisible(int ligne) {
+        int wxPrime = Math.max(0, register.get(Reg.WX) - WX_OFF);
+        return register.testBit(Reg.LCDC, LCDC.WIN) && wxPrime < LCD_WIDTH
+                && register.get(Reg.WY) <= ligne;
+    }
+
     /**
      * Méthode permettant de calculer la valeur du msb et lsb d'un octet en
      * fonction de certains parametre
@@ -809,8 +1154,7 @@ public final class LcdController implements Clocked, Component {
      * @return l'info voulu
      */
     private int getSpriteInfo(int spriteIndex, SPRITE info) {
-        return this.read(AddressMap.OAM_START + spriteIndex * SPRITE_INFO
-                + info.index());
+        return ramSprite.read(spriteIndex * SPRITE_INFO + info.index());
     }
 
     /**
@@ -1,5 +1,6 @@
 package ch.epfl.gameboj.component.lcd;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -90,6 +91,17 @@ public final class LcdImage {
         return this.height;
     }
 
+    /**
+     * Methode qui retourne la ligne d'index donné de l'image
+     * 
+     * @param index
+     *            l'index de la ligne
+     * @return la ligne voulue
+     */
+    LcdImageLine line(int index) {
+        return this.image.get(index);
+    }
+
     /**
      * Methode qui permet d'obtenir, sous la forme d'un entier compris entre 0
      * et 3, la couleur d'un pixel d'index (x, y) donné
@@ -110,6 +122,43 @@ public final class LcdImage {
         return (first | second);
     }
 
+    /**
+     * Methode qui écrit les lignes de l'image (msb, lsb puis opacité de chaque
+     * ligne, cf. BitVector.writeTo) dans le tampon donné
+     * 
+     * @param buffer
+     *            le tampon dans lequel écrire
+     */
+    void writeTo(ByteBuffer buffer) {
+        for (LcdImageLine line : image) {
+            line.msb().writeTo(buffer);
+            line.lsb().writeTo(buffer);
+            line.opacity().writeTo(buffer);
+        }
+    }
+
+    /**
+     * Methode qui lit une image de la taille donnée écrite par writeTo
+     * 
+     * @param buffer
+     *            le tampon à lire
+     * @param w
+     *            la largeur de l'image
+     * @param h
+     *            la hauteur de l'image
+     * @return l'image lue
+     */
+    static LcdImage readFrom(ByteBuffer buffer, int w, int h) {
+        List<LcdImageLine> lines = new ArrayList<>(h);
+        for (int i = 0; i < h; ++i) {
+            BitVector msb = BitVector.readFrom(buffer, w);
+            BitVector lsb = BitVector.readFrom(buffer, w);
+            BitVector opacity = BitVector.readFrom(buffer, w);
+            lines.add(new LcdImageLine(msb, lsb, opacity));
+        }
+        return new LcdImage(w, h, lines);
+    }
+
     /**
      * 
      * 
@@ -139,6 +188,18 @@ public final class LcdImage {
             imageList = new ArrayList<LcdImageLine>(Collections.nCopies(h, l0));
         }
 
+        /**
+         * Constructeur d'un bâtisseur dont l'image en construction est
+         * initialement une copie de l'image donnée
+         * 
+         * @param image l'image de départ
+         */
+        Builder(LcdImage image) {
+            this.width = image.width;
+            this.height = image.height;
+            this.imageList = new ArrayList<LcdImageLine>(image.image);
+        }
+
         /**
          * Construit l'image en construction 
          * @return l'image en cours de construction
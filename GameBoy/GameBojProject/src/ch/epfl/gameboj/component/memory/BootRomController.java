@@ -1,10 +1,12 @@
 package ch.epfl.gameboj.component.memory;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 import ch.epfl.gameboj.AddressMap;
 import ch.epfl.gameboj.Preconditions;
-import ch.epfl.gameboj.component.Component;
+import ch.epfl.gameboj.component.BankedMemory;
+import ch.epfl.gameboj.component.Stateful;
 import ch.epfl.gameboj.component.cartridge.Cartridge;
 
 /**
@@ -14,11 +16,12 @@ import ch.epfl.gameboj.component.cartridge.Cartridge;
  *         Classe qui représente le contrôleur de la mémoire morte de démarrage
  *
  */
-public final class BootRomController implements Component {
+public final class BootRomController implements BankedMemory, Stateful {
 
     private final Cartridge c;
     private final Rom bootRom;
     private boolean boot;
+    private Runnable bankListener;
 
     /**
      * Constructeur qui construit un contrôleur de mémoire de démarrage auquel
@@ -54,8 +57,50 @@ public final class BootRomController implements Component {
 
         if (address == AddressMap.REG_BOOT_ROM_DISABLE && boot) {
             boot = false;
+            if (bankListener != null) {
+                bankListener.run();
+            }
         }
         c.write(address, data);
     }
 
-}
\ No newline at end of file
+    /**
+     * Tant que la mémoire de démarrage est visible, la première zone de 16 Ko
+     * n'est pas mise en cache (son contenu change lorsqu'elle est désactivée)
+     */
+    @Override
+    public int bank(int address) {
+        Preconditions.checkBits16(address);
+        if (boot && address / BANK_SIZE == AddressMap.BOOT_ROM_START
+                / BANK_SIZE) {
+            return -1;
+        }
+        return c.bank(address);
+    }
+
+    /**
+     * Écrit l'indicateur de la mémoire de démarrage puis l'état de la
+     * cartouche
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.put((byte) (boot ? 1 : 0));
+        c.saveState(buffer);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        boot = buffer.get() != 0;
+        c.loadState(buffer);
+        if (bankListener != null) {
+            bankListener.run();
+        }
+    }
+
+    @Override
+    public void setBankListener(Runnable listener) {
+        this.bankListener = listener;
+        c.setBankListener(listener);
+    }
+
+}
@@ -1,5 +1,6 @@
 package ch.epfl.gameboj.component.memory;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 import ch.epfl.gameboj.Preconditions;
@@ -82,4 +83,80 @@ public final class Ram {
         }
     }
 
+    /**
+     * Retourne une vue en lecture seule sur le contenu de la mémoire, sans
+     * copie : les écritures suivantes dans la mémoire y sont visibles
+     * 
+     * @return un tampon en lecture seule de size() octets, de position 0
+     */
+    public ByteBuffer asReadOnlyBuffer() {
+        return ByteBuffer.wrap(data).asReadOnlyBuffer();
+    }
+
+    /**
+     * Copie d'un seul bloc (System.arraycopy) les octets de cette mémoire
+     * compris entre l'index donné (inclus) et index + length (exclus) dans la
+     * mémoire cible, à partir de l'index cible donné
+     * 
+     * @param index
+     *            l'index du premier octet à copier
+     * @param target
+     *            la mémoire dans laquelle on copie les octets
+     * @param targetIndex
+     *            l'index de la mémoire cible à partir duquel on écrit
+     * @param length
+     *            le nombre d'octets à copier
+     * 
+     * @throws IndexOutOfBoundsException
+     *             si l'une des deux plages n'est pas valide
+     */
+    public void copyTo(int index, Ram target, int targetIndex, int length) {
+        Objects.requireNonNull(target);
+        Objects.checkFromIndexSize(index, length, data.length);
+        Objects.checkFromIndexSize(targetIndex, length, target.data.length);
+        System.arraycopy(this.data, index, target.data, targetIndex, length);
+    }
+
+    /**
+     * Copie d'un seul bloc les octets de cette mémoire compris entre l'index
+     * donné (inclus) et index + length (exclus) dans le tampon donné, à partir
+     * de sa position courante (qui avance de length)
+     * 
+     * @param index
+     *            l'index du premier octet à copier
+     * @param target
+     *            le tampon dans lequel on copie les octets
+     * @param length
+     *            le nombre d'octets à copier
+     * 
+     * @throws IndexOutOfBoundsException
+     *             si la plage n'est pas valide
+     */
+    public void copyTo(int index, ByteBuffer target, int length) {
+        Objects.requireNonNull(target);
+        Objects.checkFromIndexSize(index, length, data.length);
+        target.put(this.data, index, length);
+    }
+
+    /**
+     * Copie d'un seul bloc length octets du tampon donné, à partir de sa
+     * position courante (qui avance de length), dans cette mémoire à partir de
+     * l'index donné
+     * 
+     * @param source
+     *            le tampon dont on copie les octets
+     * @param index
+     *            l'index de cette mémoire à partir duquel on écrit
+     * @param length
+     *            le nombre d'octets à copier
+     * 
+     * @throws IndexOutOfBoundsException
+     *             si la plage n'est pas valide
+     */
+    public void copyFrom(ByteBuffer source, int index, int length) {
+        Objects.requireNonNull(source);
+        Objects.checkFromIndexSize(index, length, data.length);
+        source.get(this.data, index, length);
+    }
+
 }
@@ -82,4 +82,30 @@ public final class RamController implements Component {
 
     }
 
+    /**
+     * Copie directement (sans passer par le bus) les octets compris entre
+     * l'adresse donnée et address + length dans la mémoire cible, si et
+     * seulement si toute cette plage est controlée par ce contrôleur
+     * 
+     * @param address
+     *            l'adresse du premier octet à copier
+     * @param target
+     *            la mémoire dans laquelle on copie les octets
+     * @param targetIndex
+     *            l'index de la mémoire cible à partir duquel on écrit
+     * @param length
+     *            le nombre d'octets à copier
+     * @return true si la copie a été faite, false si la plage sort de ce
+     *         contrôleur
+     */
+    public boolean copyTo(int address, Ram target, int targetIndex,
+            int length) {
+        Preconditions.checkBits16(address);
+        if (address < startAddress || address + length > endAddress) {
+            return false;
+        }
+        this.ram.copyTo(address - startAddress, target, targetIndex, length);
+        return true;
+    }
+
 }
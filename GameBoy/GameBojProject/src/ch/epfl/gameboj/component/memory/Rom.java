@@ -12,6 +12,7 @@ import java.util.Objects;
 public final class Rom {
 
     private final byte[] data;
+    private final int size;
 
     /**
      * Constructeur de la classe
@@ -21,18 +22,41 @@ public final class Rom {
      *            la mémoir morte
      */
     public Rom(byte[] data) {
-        Objects.requireNonNull(data);
-        this.data = Arrays.copyOf(data, data.length);
+        this(Arrays.copyOf(Objects.requireNonNull(data), data.length),
+                data.length);
+    }
+
+    private Rom(byte[] data, int size) {
+        this.data = data;
+        this.size = size;
+    }
+
+    /**
+     * Construit une mémoire morte sur les size premiers octets du tableau
+     * donné, sans le copier (comme ByteBuffer.wrap) : l'appelant cède le
+     * tableau et ne doit plus le modifier. Réservé aux tableaux tout juste
+     * lus, comme ceux des fichiers de roms
+     * 
+     * @param data
+     *            le tableau, cédé à la mémoire morte
+     * @param size
+     *            la taille de la mémoire morte
+     * @return la mémoire morte
+     * @throws IndexOutOfBoundsException
+     *             si size est négative ou plus grande que le tableau
+     */
+    public static Rom wrap(byte[] data, int size) {
+        Objects.checkFromIndexSize(0, size, data.length);
+        return new Rom(data, size);
     }
 
     /**
      * Methode qui retourne la taille en octet de la mémoire morte
      * 
-     * @return data.lenght la taille du tableau représentant la mémoire morte
+     * @return size la taille de la mémoire morte
      */
     public int size() {
-        Objects.requireNonNull(this.data);
-        return data.length;
+        return size;
     }
 
     /**
@@ -50,8 +74,7 @@ public final class Rom {
      * 
      */
     public int read(int index) {
-        Objects.requireNonNull(this.data);
-        if ((index >= data.length) || (index < 0)) {
+        if ((index >= size) || (index < 0)) {
             throw new IndexOutOfBoundsException();
         } else {
             return Byte.toUnsignedInt(this.data[index]);
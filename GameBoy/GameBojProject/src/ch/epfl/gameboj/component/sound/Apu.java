@@ -0,0 +1,323 @@
+package ch.epfl.gameboj.component.sound;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+import ch.epfl.gameboj.AddressMap;
+import ch.epfl.gameboj.Preconditions;
+import ch.epfl.gameboj.bits.Bits;
+import ch.epfl.gameboj.component.Component;
+import ch.epfl.gameboj.component.Stateful;
+
+/**
+ * Classe qui représente l'unité de traitement du son (Apu) du Game Boy : les
+ * registres NR10 à NR52 (0xFF10 à 0xFF26), la mémoire d'onde (0xFF30 à
+ * 0xFF3F) et les quatre canaux (deux carrés, un d'onde, un de bruit).
+ *
+ * L'Apu n'est pas piloté par l'horloge : il rattrape le temps écoulé par
+ * lots, seulement lorsqu'un de ses registres est écrit (ou NR52 lu) et
+ * lorsque la GameBoy lui demande ses échantillons (cf. update, à la fin de
+ * chaque simulation). Le séquenceur (longueur, enveloppe, balayage) avance
+ * alors de 512 Hz en 512 Hz et, si une sortie est attachée (cf. setOutput),
+ * les canaux avancent d'un échantillon à l'autre et chaque échantillon est
+ * mixé et ajouté au tampon, sans jamais attendre. Sans sortie, seul le
+ * séquenceur avance, ce qui suffit aux valeurs lisibles par le programme.
+ *
+ * Comme sur la Game Boy d'origine, lorsque l'Apu est éteint (NR52), seuls
+ * NR52, la mémoire d'onde et les compteurs de longueur peuvent être écrits.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+public final class Apu implements Component, Stateful {
+
+    private static final long CYCLES_BY_SECOND = 1L << 20;
+    private static final int SOUND_CYCLES_BY_CYCLE = 4;
+    private static final int SEQUENCER_PERIOD = 2048;
+    private static final int NR10_INDEX = 0;
+    private static final int NR50_INDEX = 0x14, NR51_INDEX = 0x15,
+            NR52_INDEX = 0x16;
+    private static final int REGISTERS_PER_CHANNEL = 5;
+    private static final int LENGTH_REGISTER = 1;
+    private static final int[] READ_MASKS = { 0x80, 0x3F, 0x00, 0xFF, 0xBF,
+            0xFF, 0x3F, 0x00, 0xFF, 0xBF, 0x7F, 0xFF, 0x9F, 0xFF, 0xBF, 0xFF,
+            0xFF, 0x00, 0x00, 0xBF, 0x00, 0x00, 0x70 };
+    private static final int UNUSED_READ = 0xFF;
+    private static final int SAMPLE_SCALE = 64;
+    private static final double CAPACITOR_DECAY = 0.999958;
+
+    private final LongSupplier clock;
+    private final int[] registers = new int[READ_MASKS.length];
+    private final int[] waveRam = new int[AddressMap.WAVE_RAM_SIZE];
+    private final Channel[] channels = { new SquareChannel(true),
+            new SquareChannel(false), new WaveChannel(waveRam),
+            new NoiseChannel() };
+
+    private boolean powered = false;
+    private long lastCycle = 0;
+    private int sequencerStep = 0;
+    private long nextSequencerCycle = Long.MAX_VALUE;
+
+    private SampleBuffer output = null;
+    private long sampleIndex = 0;
+    private long nextSampleCycle = Long.MAX_VALUE;
+    private double capacitorCharge = 0;
+    private double leftCapacitor = 0, rightCapacitor = 0;
+
+    /**
+     * Construit un Apu éteint, sans sortie
+     *
+     * @param clock
+     *            le fournisseur du cycle actuel de la GameBoy, consulté
+     *            lorsqu'un registre est écrit
+     */
+    public Apu(LongSupplier clock) {
+        this.clock = Objects.requireNonNull(clock);
+    }
+
+    /**
+     * Attache le tampon dans lequel ajouter les échantillons produits à
+     * partir de maintenant, à sa fréquence d'échantillonnage, ou détache la
+     * sortie si le tampon donné est null. A appeler depuis le fil de la
+     * simulation
+     *
+     * @param buffer
+     *            le tampon, ou null
+     */
+    public void setOutput(SampleBuffer buffer) {
+        update(clock.getAsLong());
+        this.output = buffer;
+        this.leftCapacitor = 0;
+        this.rightCapacitor = 0;
+        if (buffer != null) {
+            capacitorCharge = Math.pow(CAPACITOR_DECAY,
+                    (double) CYCLES_BY_SECOND * SOUND_CYCLES_BY_CYCLE
+                            / buffer.sampleRate());
+        }
+        resetSampleClock();
+    }
+
+    /**
+     * Methode qui rattrape le temps écoulé jusqu'au cycle donné (exclu) :
+     * avance le séquenceur et, si une sortie est attachée, produit les
+     * échantillons de cette période
+     *
+     * @param cycle
+     *            le cycle actuel de la GameBoy
+     */
+    public void update(long cycle) {
+        while (lastCycle < cycle) {
+            long next = Math.min(cycle,
+                    Math.min(nextSequencerCycle, nextSampleCycle));
+            if (output != null && powered) {
+                int soundCycles = (int) (next - lastCycle)
+                        * SOUND_CYCLES_BY_CYCLE;
+                for (Channel c : channels) {
+                    c.advance(soundCycles);
+                }
+            }
+            lastCycle = next;
+
+            if (next == nextSequencerCycle) {
+                clockSequencer();
+                nextSequencerCycle += SEQUENCER_PERIOD;
+            }
+            if (next == nextSampleCycle) {
+                writeSample();
+                sampleIndex += 1;
+                nextSampleCycle = sampleCycle(sampleIndex);
+            }
+        }
+    }
+
+    @Override
+    public int read(int address) {
+        Preconditions.checkBits16(address);
+        if (address < AddressMap.REGS_AUDIO_START
+                || address >= AddressMap.WAVE_RAM_END) {
+            return NO_DATA;
+        }
+        if (address >= AddressMap.WAVE_RAM_START) {
+            return waveRam[address - AddressMap.WAVE_RAM_START];
+        }
+
+        int index = address - AddressMap.REGS_AUDIO_START;
+        if (index == NR52_INDEX) {
+            update(clock.getAsLong());
+            int status = READ_MASKS[NR52_INDEX] | (powered ? 0x80 : 0);
+            for (int i = 0; i < channels.length; ++i) {
+                status |= channels[i].isEnabled() ? 1 << i : 0;
+            }
+            return status;
+        }
+        return index < registers.length
+                ? registers[index] | READ_MASKS[index]
+                : UNUSED_READ;
+    }
+
+    @Override
+    public void write(int address, int data) {
+        Preconditions.checkBits16(address);
+        Preconditions.checkBits8(data);
+        if (address < AddressMap.REGS_AUDIO_START
+                || address >= AddressMap.WAVE_RAM_END) {
+            return;
+        }
+        update(clock.getAsLong());
+        if (address >= AddressMap.WAVE_RAM_START) {
+            waveRam[address - AddressMap.WAVE_RAM_START] = data;
+            return;
+        }
+
+        int index = address - AddressMap.REGS_AUDIO_START;
+        if (index == NR52_INDEX) {
+            setPowered(Bits.test(data, 7));
+        } else if (powered && index < registers.length) {
+            registers[index] = data;
+            if (index < NR50_INDEX) {
+                channels[index / REGISTERS_PER_CHANNEL]
+                        .write(index % REGISTERS_PER_CHANNEL, data);
+            }
+        } else if (index < NR50_INDEX
+                && index % REGISTERS_PER_CHANNEL == LENGTH_REGISTER) {
+            // Apu éteint : seuls les compteurs de longueur (NR11, NR21, NR31,
+            // NR41) restent accessibles en écriture
+            channels[index / REGISTERS_PER_CHANNEL].writeLengthOnly(data);
+        }
+    }
+
+    /**
+     * Écrit l'état de l'Apu (après avoir rattrapé le temps écoulé) : registres,
+     * mémoire d'onde, séquenceur et canaux
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        update(clock.getAsLong());
+        buffer.putLong(lastCycle).put((byte) (powered ? 1 : 0))
+                .put((byte) sequencerStep).putLong(nextSequencerCycle);
+        for (int r : registers) {
+            buffer.put((byte) r);
+        }
+        for (int b : waveRam) {
+            buffer.put((byte) b);
+        }
+        for (Channel c : channels) {
+            c.saveState(buffer);
+        }
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        lastCycle = buffer.getLong();
+        powered = buffer.get() != 0;
+        sequencerStep = buffer.get();
+        nextSequencerCycle = buffer.getLong();
+        for (int i = 0; i < registers.length; ++i) {
+            registers[i] = Byte.toUnsignedInt(buffer.get());
+        }
+        for (int i = 0; i < waveRam.length; ++i) {
+            waveRam[i] = Byte.toUnsignedInt(buffer.get());
+        }
+        for (Channel c : channels) {
+            c.loadState(buffer);
+        }
+        resetSampleClock();
+    }
+
+    private void setPowered(boolean on) {
+        if (on && !powered) {
+            sequencerStep = 0;
+            nextSequencerCycle = lastCycle + SEQUENCER_PERIOD;
+        } else if (!on && powered) {
+            for (Channel c : channels) {
+                c.reset();
+            }
+            for (int i = NR10_INDEX; i < registers.length; ++i) {
+                registers[i] = 0;
+            }
+            nextSequencerCycle = Long.MAX_VALUE;
+        }
+        powered = on;
+    }
+
+    /**
+     * Methode appelée à 512 Hz : longueur aux pas pairs, balayage aux pas 2
+     * et 6, enveloppe au pas 7
+     */
+    private void clockSequencer() {
+        if (sequencerStep % 2 == 0) {
+            for (Channel c : channels) {
+                c.clockLength();
+            }
+        }
+        if (sequencerStep == 2 || sequencerStep == 6) {
+            channels[0].clockSweep();
+        }
+        if (sequencerStep == 7) {
+            for (Channel c : channels) {
+                c.clockEnvelope();
+            }
+        }
+        sequencerStep = (sequencerStep + 1) % 8;
+    }
+
+    /**
+     * Mixe la sortie des canaux selon NR51 (répartition) et NR50 (volume),
+     * retire la composante continue (comme le condensateur de la console) et
+     * ajoute l'échantillon au tampon
+     */
+    private void writeSample() {
+        int left = 0, right = 0;
+        if (powered) {
+            int panning = registers[NR51_INDEX];
+            for (int i = 0; i < channels.length; ++i) {
+                Channel c = channels[i];
+                if (c.isAudible()) {
+                    int v = 2 * c.amplitude() - 15;
+                    left += Bits.test(panning, i + 4) ? v : 0;
+                    right += Bits.test(panning, i) ? v : 0;
+                }
+            }
+            int volume = registers[NR50_INDEX];
+            left *= Bits.extract(volume, 4, 3) + 1;
+            right *= Bits.clip(3, volume) + 1;
+        }
+
+        double l = left - leftCapacitor;
+        leftCapacitor = left - l * capacitorCharge;
+        double r = right - rightCapacitor;
+        rightCapacitor = right - r * capacitorCharge;
+        output.offer(toSample(l), toSample(r));
+    }
+
+    private static short toSample(double v) {
+        long s = Math.round(v * SAMPLE_SCALE);
+        return (short) Math.max(Short.MIN_VALUE,
+                Math.min(Short.MAX_VALUE, s));
+    }
+
+    /**
+     * Recalcule le prochain échantillon à produire : le premier dont le cycle
+     * n'est pas encore passé, ou aucun s'il n'y a pas de sortie
+     */
+    private void resetSampleClock() {
+        if (output == null) {
+            nextSampleCycle = Long.MAX_VALUE;
+            return;
+        }
+        long rate = output.sampleRate();
+        sampleIndex = (lastCycle * rate + CYCLES_BY_SECOND - 1)
+                / CYCLES_BY_SECOND;
+        nextSampleCycle = sampleCycle(sampleIndex);
+    }
+
+    /**
+     * @return le cycle auquel l'échantillon d'index donné est produit
+     */
+    private long sampleCycle(long index) {
+        long rate = output.sampleRate();
+        return (index * CYCLES_BY_SECOND + rate - 1) / rate;
+    }
+
+}
@@ -0,0 +1,88 @@
+package ch.epfl.gameboj.component.sound;
+
+import java.io.Closeable;
+import java.util.Objects;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Classe qui joue les échantillons d'un SampleBuffer sur la sortie audio par
+ * défaut (javax.sound), depuis son propre fil d'exécution : seul ce fil
+ * attend la carte son, jamais la simulation. Si le tampon est vide, la sortie
+ * attend simplement les échantillons suivants.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+public final class AudioOutput implements Closeable {
+
+    private static final int CHUNK = 256;
+    private static final int BYTES_PER_FRAME = 4;
+    private static final long IDLE_MILLIS = 1;
+
+    private final SampleBuffer buffer;
+    private final SourceDataLine line;
+    private final Thread thread;
+    private volatile boolean closed = false;
+
+    /**
+     * Ouvre la sortie audio à la fréquence du tampon donné et commence à le
+     * vider
+     *
+     * @param buffer
+     *            le tampon à jouer
+     * @throws LineUnavailableException
+     *             si aucune sortie audio n'est disponible
+     */
+    public AudioOutput(SampleBuffer buffer) throws LineUnavailableException {
+        this.buffer = Objects.requireNonNull(buffer);
+        AudioFormat format = new AudioFormat(buffer.sampleRate(), 16, 2,
+                true, false);
+        this.line = AudioSystem.getSourceDataLine(format);
+        line.open(format, buffer.capacity() * BYTES_PER_FRAME);
+        line.start();
+
+        this.thread = new Thread(this::play, "gameboj-audio");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Arrête la lecture et ferme la sortie audio
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        line.close();
+    }
+
+    private void play() {
+        short[] samples = new short[2 * CHUNK];
+        byte[] bytes = new byte[BYTES_PER_FRAME * CHUNK];
+        while (!closed) {
+            int n = buffer.poll(samples, 0, CHUNK);
+            if (n == 0) {
+                try {
+                    Thread.sleep(IDLE_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+            for (int i = 0; i < 2 * n; ++i) {
+                bytes[2 * i] = (byte) samples[i];
+                bytes[2 * i + 1] = (byte) (samples[i] >> 8);
+            }
+            line.write(bytes, 0, BYTES_PER_FRAME * n);
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+package ch.epfl.gameboj.component.sound;
+
+import java.nio.ByteBuffer;
+
+import ch.epfl.gameboj.bits.Bits;
+import ch.epfl.gameboj.component.Stateful;
+
+/**
+ * Classe abstraite qui représente un des quatre canaux de l'Apu : état
+ * allumé/éteint, convertisseur et compteur de longueur, communs à tous les
+ * canaux. Les durées sont exprimées en cycles de l'horloge du son (4 par
+ * cycle de la GameBoy).
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+abstract class Channel implements Stateful {
+
+    private final int maxLength;
+    private boolean enabled = false;
+    private boolean dacEnabled = false;
+    private int length = 0;
+    private boolean lengthEnabled = false;
+
+    /**
+     * Construit un canal éteint
+     *
+     * @param maxLength
+     *            la valeur maximale du compteur de longueur (64 ou 256)
+     */
+    Channel(int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Methode qui traite l'écriture de la valeur donnée dans le registre
+     * d'index donné du canal (0 pour NRx0, ..., 4 pour NRx4)
+     */
+    abstract void write(int index, int data);
+
+    /**
+     * Methode qui fait avancer le générateur de forme d'onde du nombre donné
+     * de cycles de l'horloge du son
+     */
+    abstract void advance(int cycles);
+
+    /**
+     * @return la sortie numérique actuelle du canal (0 à 15)
+     */
+    abstract int amplitude();
+
+    /**
+     * Methode appelée à 64 Hz par le séquenceur (enveloppe de volume)
+     */
+    void clockEnvelope() {
+    }
+
+    /**
+     * Methode appelée à 128 Hz par le séquenceur (balayage de fréquence)
+     */
+    void clockSweep() {
+    }
+
+    /**
+     * Methode qui déclenche le canal : il s'allume si son convertisseur est
+     * allumé
+     */
+    void trigger() {
+        enabled = dacEnabled;
+        if (length == 0) {
+            length = maxLength;
+        }
+    }
+
+    /**
+     * Methode qui éteint le canal et remet ses registres à zéro (extinction
+     * de l'Apu)
+     */
+    void reset() {
+        for (int i = 0; i <= 4; ++i) {
+            write(i, 0);
+        }
+        enabled = false;
+        length = 0;
+    }
+
+    /**
+     * Methode appelée à 256 Hz par le séquenceur : décrémente le compteur de
+     * longueur, s'il est activé, et éteint le canal quand il atteint 0
+     */
+    final void clockLength() {
+        if (lengthEnabled && length > 0) {
+            length -= 1;
+            if (length == 0) {
+                enabled = false;
+            }
+        }
+    }
+
+    /**
+     * @return vrai ssi le canal est allumé (bit correspondant de NR52)
+     */
+    final boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return vrai ssi le canal est allumé et produit un son
+     */
+    final boolean isAudible() {
+        return enabled && dacEnabled;
+    }
+
+    /**
+     * Methode qui éteint le canal (dépassement du balayage de fréquence)
+     */
+    final void disable() {
+        enabled = false;
+    }
+
+    /**
+     * Methode qui allume ou éteint le convertisseur ; l'éteindre éteint le
+     * canal
+     */
+    final void setDacEnabled(boolean on) {
+        dacEnabled = on;
+        if (!on) {
+            enabled = false;
+        }
+    }
+
+    /**
+     * Methode qui charge le compteur de longueur à partir de la valeur écrite
+     * dans le registre de longueur
+     */
+    final void writeLength(int data) {
+        length = maxLength - data;
+    }
+
+    /**
+     * Methode qui traite l'écriture dans le registre de longueur (NRx1) alors
+     * que l'Apu est éteint : seul le compteur de longueur est chargé (6 bits
+     * de poids faible, 8 pour le canal d'onde)
+     */
+    void writeLengthOnly(int data) {
+        writeLength(Bits.clip(6, data));
+    }
+
+    /**
+     * Methode qui traite l'écriture dans le registre de contrôle (NRx4) :
+     * activation du compteur de longueur et déclenchement
+     */
+    final void writeControl(int data) {
+        lengthEnabled = Bits.test(data, 6);
+        if (Bits.test(data, 7)) {
+            trigger();
+        }
+    }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.put((byte) ((enabled ? 1 : 0) | (dacEnabled ? 2 : 0)
+                | (lengthEnabled ? 4 : 0)));
+        buffer.putShort((short) length);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        int flags = buffer.get();
+        enabled = (flags & 1) != 0;
+        dacEnabled = (flags & 2) != 0;
+        lengthEnabled = (flags & 4) != 0;
+        length = buffer.getShort();
+    }
+
+}
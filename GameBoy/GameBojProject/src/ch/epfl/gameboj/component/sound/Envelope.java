@@ -0,0 +1,92 @@
+package ch.epfl.gameboj.component.sound;
+
+import java.nio.ByteBuffer;
+
+import ch.epfl.gameboj.bits.Bits;
+import ch.epfl.gameboj.component.Stateful;
+
+/**
+ * Classe qui représente l'enveloppe de volume des canaux carrés et du canal de
+ * bruit (registres NR12, NR22 et NR42)
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+final class Envelope implements Stateful {
+
+    private static final int MAX_VOLUME = 15;
+    private static final int ZERO_PERIOD = 8;
+
+    private int initialVolume = 0;
+    private boolean increase = false;
+    private int period = 0;
+    private int volume = 0;
+    private int timer = 0;
+
+    /**
+     * Methode qui change les paramètres de l'enveloppe selon la valeur écrite
+     * dans son registre
+     */
+    void write(int data) {
+        initialVolume = Bits.extract(data, 4, 4);
+        increase = Bits.test(data, 3);
+        period = Bits.clip(3, data);
+    }
+
+    /**
+     * Methode qui indique si la valeur écrite dans le registre de l'enveloppe
+     * allume le convertisseur du canal
+     */
+    static boolean dacEnabled(int data) {
+        return (data & 0xF8) != 0;
+    }
+
+    /**
+     * Methode qui redémarre l'enveloppe (déclenchement du canal)
+     */
+    void trigger() {
+        volume = initialVolume;
+        timer = period == 0 ? ZERO_PERIOD : period;
+    }
+
+    /**
+     * Methode appelée à 64 Hz par le séquenceur
+     */
+    void clock() {
+        if (period == 0) {
+            return;
+        }
+        timer -= 1;
+        if (timer == 0) {
+            timer = period;
+            if (increase && volume < MAX_VOLUME) {
+                volume += 1;
+            } else if (!increase && volume > 0) {
+                volume -= 1;
+            }
+        }
+    }
+
+    /**
+     * @return le volume actuel (0 à 15)
+     */
+    int volume() {
+        return volume;
+    }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.put((byte) initialVolume).put((byte) (increase ? 1 : 0))
+                .put((byte) period).put((byte) volume).put((byte) timer);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        initialVolume = buffer.get();
+        increase = buffer.get() != 0;
+        period = buffer.get();
+        volume = buffer.get();
+        timer = buffer.get();
+    }
+
+}
@@ -0,0 +1,135 @@
+package ch.epfl.gameboj.component.sound;
+
+import java.nio.ByteBuffer;
+
+import ch.epfl.gameboj.bits.Bits;
+
+/**
+ * Classe qui représente le canal 4 (NR41 à NR44), qui produit un bruit à
+ * partir d'un registre à décalage à rétroaction linéaire de 15 (ou 7) bits
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+final class NoiseChannel extends Channel {
+
+    private static final int[] DIVISORS = { 8, 16, 32, 48, 64, 80, 96, 112 };
+    private static final int LFSR_INITIAL = 0x7FFF;
+    private static final int MAX_SHIFT = 13;
+    private static final int LFSR_WIDTH = 15, SHORT_LFSR_WIDTH = 7;
+    private static final int SHORT_LFSR_MASK = (1 << SHORT_LFSR_WIDTH) - 1;
+
+    private final Envelope envelope = new Envelope();
+    private int shift = 0;
+    private boolean shortMode = false;
+    private int divisor = 0;
+    private int timer = 0;
+    private int lfsr = LFSR_INITIAL;
+
+    /**
+     * Construit un canal de bruit éteint
+     */
+    NoiseChannel() {
+        super(64);
+    }
+
+    @Override
+    void write(int index, int data) {
+        switch (index) {
+        case 0:
+            break;
+        case 1:
+            writeLength(Bits.clip(6, data));
+            break;
+        case 2:
+            envelope.write(data);
+            setDacEnabled(Envelope.dacEnabled(data));
+            break;
+        case 3:
+            shift = Bits.extract(data, 4, 4);
+            shortMode = Bits.test(data, 3);
+            divisor = Bits.clip(3, data);
+            break;
+        default:
+            writeControl(data);
+        }
+    }
+
+    @Override
+    void trigger() {
+        super.trigger();
+        timer = period();
+        lfsr = LFSR_INITIAL;
+        envelope.trigger();
+    }
+
+    @Override
+    void advance(int cycles) {
+        if (shift > MAX_SHIFT) {
+            return;
+        }
+        timer -= cycles;
+        if (timer <= 0) {
+            int period = period();
+            int steps = -timer / period + 1;
+            timer += steps * period;
+            shiftLfsr(steps);
+        }
+    }
+
+    /**
+     * Fait avancer le registre à décalage du nombre de pas donné, par blocs :
+     * les n bits réinjectés par n pas consécutifs ne dépendent que des n + 1
+     * bits de poids faible actuels, tant que n est inférieur à la largeur du
+     * registre (15, ou 7 en mode court)
+     */
+    private void shiftLfsr(int steps) {
+        int maxBlock = (shortMode ? SHORT_LFSR_WIDTH : LFSR_WIDTH) - 1;
+        while (steps > 0) {
+            int n = Math.min(steps, maxBlock);
+            int feedback = (lfsr ^ (lfsr >> 1)) & ((1 << n) - 1);
+            int shifted = (lfsr >> n) | (feedback << (LFSR_WIDTH - n));
+            if (shortMode) {
+                shifted = (shifted & ~SHORT_LFSR_MASK)
+                        | ((lfsr & SHORT_LFSR_MASK) >> n)
+                        | (feedback << (SHORT_LFSR_WIDTH - n));
+            }
+            lfsr = shifted;
+            steps -= n;
+        }
+    }
+
+    @Override
+    int amplitude() {
+        return (lfsr & 1) == 0 ? envelope.volume() : 0;
+    }
+
+    @Override
+    void clockEnvelope() {
+        envelope.clock();
+    }
+
+    private int period() {
+        return DIVISORS[divisor] << shift;
+    }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        super.saveState(buffer);
+        envelope.saveState(buffer);
+        buffer.put((byte) shift).put((byte) (shortMode ? 1 : 0))
+                .put((byte) divisor).putInt(timer).putShort((short) lfsr);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        super.loadState(buffer);
+        envelope.loadState(buffer);
+        shift = buffer.get();
+        shortMode = buffer.get() != 0;
+        divisor = buffer.get();
+        timer = buffer.getInt();
+        lfsr = buffer.getShort();
+    }
+
+}
@@ -0,0 +1,142 @@
+package ch.epfl.gameboj.component.sound;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import ch.epfl.gameboj.Preconditions;
+
+/**
+ * Classe qui représente un tampon circulaire d'échantillons stéréo (16 bits
+ * signés), rempli par un seul fil d'exécution (celui de la simulation, cf.
+ * Apu) et vidé par un seul autre (celui de la sortie audio), sans verrou : le
+ * producteur ne fait que publier sa position d'écriture et le consommateur sa
+ * position de lecture.
+ *
+ * Le producteur n'attend jamais : si le tampon est plein (sortie audio en
+ * retard, ou simulation plus rapide que le temps réel), les nouveaux
+ * échantillons sont perdus et comptés (cf. dropped).
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+public final class SampleBuffer {
+
+    private final int sampleRate;
+    private final short[] samples;
+    private final int mask;
+
+    // Nombre d'échantillons lus (écrit par le consommateur)
+    private final AtomicLong head = new AtomicLong();
+    // Nombre d'échantillons écrits (écrit par le producteur)
+    private final AtomicLong tail = new AtomicLong();
+
+    // Etat du producteur seul
+    private long written = 0;
+    private long readSeen = 0;
+    private long dropped = 0;
+
+    /**
+     * Construit un tampon vide
+     *
+     * @param capacity
+     *            le nombre d'échantillons stéréo qu'il peut contenir (une
+     *            puissance de deux)
+     * @param sampleRate
+     *            la fréquence d'échantillonnage (en Hz) voulue par la sortie
+     *            audio
+     * @throws IllegalArgumentException
+     *             si la capacité n'est pas une puissance de deux ou si la
+     *             fréquence n'est pas strictement positive
+     */
+    public SampleBuffer(int capacity, int sampleRate) {
+        Preconditions.checkArgument(
+                capacity > 0 && Integer.bitCount(capacity) == 1);
+        Preconditions.checkArgument(sampleRate > 0);
+        this.sampleRate = sampleRate;
+        this.samples = new short[2 * capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return la fréquence d'échantillonnage (en Hz)
+     */
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return le nombre d'échantillons stéréo que le tampon peut contenir
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Methode du producteur qui ajoute un échantillon, s'il reste de la place
+     *
+     * @param left
+     *            la valeur du canal gauche
+     * @param right
+     *            la valeur du canal droit
+     * @return vrai ssi l'échantillon a été ajouté
+     */
+    public boolean offer(short left, short right) {
+        if (written - readSeen > mask) {
+            readSeen = head.get();
+            if (written - readSeen > mask) {
+                dropped += 1;
+                return false;
+            }
+        }
+        int index = 2 * (int) (written & mask);
+        samples[index] = left;
+        samples[index + 1] = right;
+        written += 1;
+        tail.lazySet(written);
+        return true;
+    }
+
+    /**
+     * Methode du producteur qui retourne le nombre d'échantillons perdus faute
+     * de place
+     *
+     * @return le nombre d'échantillons perdus
+     */
+    public long dropped() {
+        return dropped;
+    }
+
+    /**
+     * Methode du consommateur qui retourne le nombre d'échantillons prêts à
+     * être lus
+     *
+     * @return le nombre d'échantillons stéréo disponibles
+     */
+    public int available() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * Methode du consommateur qui retire au plus count échantillons et les
+     * copie dans le tableau donné (gauche puis droite pour chacun)
+     *
+     * @param destination
+     *            le tableau dans lequel copier
+     * @param offset
+     *            l'index de la première valeur copiée
+     * @param count
+     *            le nombre maximal d'échantillons stéréo à retirer
+     * @return le nombre d'échantillons retirés
+     */
+    public int poll(short[] destination, int offset, int count) {
+        long start = head.get();
+        int n = (int) Math.min(count, tail.get() - start);
+        for (int i = 0; i < n; ++i) {
+            int index = 2 * (int) ((start + i) & mask);
+            destination[offset + 2 * i] = samples[index];
+            destination[offset + 2 * i + 1] = samples[index + 1];
+        }
+        head.lazySet(start + n);
+        return n;
+    }
+
+}
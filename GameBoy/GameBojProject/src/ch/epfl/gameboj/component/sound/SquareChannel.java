@@ -0,0 +1,177 @@
+package ch.epfl.gameboj.component.sound;
+
+import java.nio.ByteBuffer;
+
+import ch.epfl.gameboj.bits.Bits;
+
+/**
+ * Classe qui représente un canal à onde carrée : le canal 1 (NR10 à NR14, avec
+ * balayage de fréquence) ou le canal 2 (NR21 à NR24, sans)
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+final class SquareChannel extends Channel {
+
+    private static final int[] DUTY_PATTERNS = { 0b00000001, 0b10000001,
+            0b10000111, 0b01111110 };
+    private static final int MAX_FREQUENCY = 0x7FF;
+    private static final int ZERO_SWEEP_PERIOD = 8;
+
+    private final boolean hasSweep;
+    private final Envelope envelope = new Envelope();
+    private int duty = 0;
+    private int frequency = 0;
+    private int timer = 0;
+    private int step = 0;
+
+    private int sweepPeriod = 0;
+    private boolean sweepNegate = false;
+    private int sweepShift = 0;
+    private int sweepTimer = 0;
+    private boolean sweepEnabled = false;
+    private int shadowFrequency = 0;
+
+    /**
+     * Construit un canal carré éteint
+     *
+     * @param hasSweep
+     *            vrai pour le canal 1, qui a un balayage de fréquence
+     */
+    SquareChannel(boolean hasSweep) {
+        super(64);
+        this.hasSweep = hasSweep;
+    }
+
+    @Override
+    void write(int index, int data) {
+        switch (index) {
+        case 0:
+            sweepPeriod = Bits.extract(data, 4, 3);
+            sweepNegate = Bits.test(data, 3);
+            sweepShift = Bits.clip(3, data);
+            break;
+        case 1:
+            duty = Bits.extract(data, 6, 2);
+            writeLength(Bits.clip(6, data));
+            break;
+        case 2:
+            envelope.write(data);
+            setDacEnabled(Envelope.dacEnabled(data));
+            break;
+        case 3:
+            frequency = (frequency & 0x700) | data;
+            break;
+        default:
+            frequency = (frequency & 0xFF) | (Bits.clip(3, data) << 8);
+            writeControl(data);
+        }
+    }
+
+    @Override
+    void trigger() {
+        super.trigger();
+        timer = period();
+        envelope.trigger();
+        if (hasSweep) {
+            shadowFrequency = frequency;
+            sweepTimer = sweepPeriod == 0 ? ZERO_SWEEP_PERIOD : sweepPeriod;
+            sweepEnabled = sweepPeriod != 0 || sweepShift != 0;
+            if (sweepShift != 0) {
+                sweptFrequency();
+            }
+        }
+    }
+
+    @Override
+    void advance(int cycles) {
+        timer -= cycles;
+        if (timer <= 0) {
+            int period = period();
+            int steps = -timer / period + 1;
+            step = (step + steps) & 7;
+            timer += steps * period;
+        }
+    }
+
+    @Override
+    int amplitude() {
+        return Bits.test(DUTY_PATTERNS[duty], 7 - step) ? envelope.volume()
+                : 0;
+    }
+
+    @Override
+    void clockEnvelope() {
+        envelope.clock();
+    }
+
+    @Override
+    void clockSweep() {
+        if (!hasSweep) {
+            return;
+        }
+        sweepTimer -= 1;
+        if (sweepTimer > 0) {
+            return;
+        }
+        sweepTimer = sweepPeriod == 0 ? ZERO_SWEEP_PERIOD : sweepPeriod;
+        if (sweepEnabled && sweepPeriod != 0) {
+            int f = sweptFrequency();
+            if (f <= MAX_FREQUENCY && sweepShift != 0) {
+                shadowFrequency = f;
+                frequency = f;
+                sweptFrequency();
+            }
+        }
+    }
+
+    /**
+     * Calcule la prochaine fréquence du balayage, et éteint le canal si elle
+     * dépasse la fréquence maximale
+     */
+    private int sweptFrequency() {
+        int delta = shadowFrequency >> sweepShift;
+        int f = sweepNegate ? shadowFrequency - delta
+                : shadowFrequency + delta;
+        if (f > MAX_FREQUENCY) {
+            disable();
+        }
+        return f;
+    }
+
+    /**
+     * @return la durée d'un huitième de période, en cycles de l'horloge du son
+     */
+    private int period() {
+        return (MAX_FREQUENCY + 1 - frequency) * 4;
+    }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        super.saveState(buffer);
+        envelope.saveState(buffer);
+        buffer.put((byte) duty).putShort((short) frequency).putInt(timer)
+                .put((byte) step);
+        buffer.put((byte) sweepPeriod).put((byte) (sweepNegate ? 1 : 0))
+                .put((byte) sweepShift).put((byte) sweepTimer)
+                .put((byte) (sweepEnabled ? 1 : 0))
+                .putShort((short) shadowFrequency);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        super.loadState(buffer);
+        envelope.loadState(buffer);
+        duty = buffer.get();
+        frequency = buffer.getShort();
+        timer = buffer.getInt();
+        step = buffer.get();
+        sweepPeriod = buffer.get();
+        sweepNegate = buffer.get() != 0;
+        sweepShift = buffer.get();
+        sweepTimer = buffer.get();
+        sweepEnabled = buffer.get() != 0;
+        shadowFrequency = buffer.getShort();
+    }
+
+}
@@ -0,0 +1,108 @@
+package ch.epfl.gameboj.component.sound;
+
+import java.nio.ByteBuffer;
+
+import ch.epfl.gameboj.bits.Bits;
+
+/**
+ * Classe qui représente le canal 3 (NR30 à NR34), qui joue les 32 échantillons
+ * de 4 bits de la mémoire d'onde (0xFF30 à 0xFF3F, poids fort d'abord)
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+final class WaveChannel extends Channel {
+
+    private static final int MAX_FREQUENCY = 0x7FF;
+    private static final int SAMPLES = 32;
+    private static final int MUTE_SHIFT = 4;
+
+    private final int[] waveRam;
+    private int volumeCode = 0;
+    private int frequency = 0;
+    private int timer = 0;
+    private int position = 0;
+
+    /**
+     * Construit un canal d'onde éteint
+     *
+     * @param waveRam
+     *            la mémoire d'onde (16 octets), partagée avec l'Apu
+     */
+    WaveChannel(int[] waveRam) {
+        super(256);
+        this.waveRam = waveRam;
+    }
+
+    @Override
+    void write(int index, int data) {
+        switch (index) {
+        case 0:
+            setDacEnabled(Bits.test(data, 7));
+            break;
+        case 1:
+            writeLength(data);
+            break;
+        case 2:
+            volumeCode = Bits.extract(data, 5, 2);
+            break;
+        case 3:
+            frequency = (frequency & 0x700) | data;
+            break;
+        default:
+            frequency = (frequency & 0xFF) | (Bits.clip(3, data) << 8);
+            writeControl(data);
+        }
+    }
+
+    @Override
+    void writeLengthOnly(int data) {
+        writeLength(data);
+    }
+
+    @Override
+    void trigger() {
+        super.trigger();
+        timer = period();
+        position = 0;
+    }
+
+    @Override
+    void advance(int cycles) {
+        timer -= cycles;
+        if (timer <= 0) {
+            int period = period();
+            int steps = -timer / period + 1;
+            position = (position + steps) % SAMPLES;
+            timer += steps * period;
+        }
+    }
+
+    @Override
+    int amplitude() {
+        int b = waveRam[position / 2];
+        int sample = position % 2 == 0 ? b >>> 4 : b & 0xF;
+        return sample >> (volumeCode == 0 ? MUTE_SHIFT : volumeCode - 1);
+    }
+
+    private int period() {
+        return (MAX_FREQUENCY + 1 - frequency) * 2;
+    }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        super.saveState(buffer);
+        buffer.put((byte) volumeCode).putShort((short) frequency)
+                .putInt(timer).put((byte) position);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        super.loadState(buffer);
+        volumeCode = buffer.get();
+        frequency = buffer.getShort();
+        timer = buffer.getInt();
+        position = buffer.get();
+    }
+
+}
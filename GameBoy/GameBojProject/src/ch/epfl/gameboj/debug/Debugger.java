@@ -0,0 +1,248 @@
+package ch.epfl.gameboj.debug;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import ch.epfl.gameboj.Bus;
+import ch.epfl.gameboj.GameBoy;
+import ch.epfl.gameboj.Preconditions;
+import ch.epfl.gameboj.component.cpu.Cpu;
+
+/**
+ * Classe qui ajoute à une GameBoy des points d'arrêt (sur l'adresse de la
+ * prochaine instruction), des points de surveillance (sur les lectures et
+ * écritures du bus, cf. Watchpoint) et l'exécution pas à pas.
+ *
+ * Les observateurs du Cpu et du Bus ne sont attachés que tant qu'au moins un
+ * point d'arrêt ou de surveillance existe : sinon la simulation ne paie qu'un
+ * test par instruction et par accès. Tant qu'ils sont attachés, les paires
+ * d'instructions et le saut des boucles d'attente sont désactivés (cf.
+ * Cpu.setInstructionHook), ce qui ne change que la vitesse de la simulation.
+ *
+ * Un point d'arrêt interrompt la simulation avant l'instruction ; il peut être
+ * signalé juste avant qu'une interruption soit traitée, auquel cas il l'est à
+ * nouveau au retour de l'interruption. L'instruction qui suit un HALT quitté
+ * sans traiter d'interruption (IME faux) n'est pas vue. Un point de
+ * surveillance interrompt la simulation après l'instruction qui a fait
+ * l'accès ; les instructions déjà décodées (cf. Cpu.setCodeSource) ne sont pas
+ * relues sur le bus.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+public final class Debugger {
+
+    private static final int ADDRESSES = 0x10000;
+    private static final int READ = 1, WRITE = 2;
+
+    private final GameBoy gameBoy;
+    private final Cpu.InstructionHook instructionHook = this::beforeInstruction;
+    private final Bus.AccessHook accessHook = new Bus.AccessHook() {
+        @Override
+        public void onRead(int address, int value) {
+            if ((watched[address] & READ) != 0) {
+                access(address, value, false);
+            }
+        }
+
+        @Override
+        public void onWrite(int address, int value) {
+            if ((watched[address] & WRITE) != 0) {
+                access(address, value, true);
+            }
+        }
+    };
+
+    private final boolean[] breakpoints = new boolean[ADDRESSES];
+    private int breakpointCount = 0;
+    private final List<Watchpoint> watchpoints = new ArrayList<>();
+    private final byte[] watched = new byte[ADDRESSES];
+    private boolean stepping = false;
+    private int currentPc = 0;
+    private Stop stop = null;
+    private Stop lastStop = null;
+
+    /**
+     * Construit un débogueur, sans point d'arrêt ni de surveillance, pour la
+     * GameBoy donnée
+     *
+     * @param gameBoy
+     *            la GameBoy
+     */
+    public Debugger(GameBoy gameBoy) {
+        this.gameBoy = Objects.requireNonNull(gameBoy);
+    }
+
+    /**
+     * @return la GameBoy
+     */
+    public GameBoy gameBoy() {
+        return gameBoy;
+    }
+
+    /**
+     * Ajoute un point d'arrêt à l'adresse donnée
+     *
+     * @param address
+     *            l'adresse (16 bits)
+     * @return vrai ssi il n'y en avait pas encore
+     */
+    public boolean addBreakpoint(int address) {
+        Preconditions.checkBits16(address);
+        if (breakpoints[address]) {
+            return false;
+        }
+        breakpoints[address] = true;
+        breakpointCount += 1;
+        updateHooks();
+        return true;
+    }
+
+    /**
+     * Retire le point d'arrêt à l'adresse donnée
+     *
+     * @param address
+     *            l'adresse (16 bits)
+     * @return vrai ssi il y en avait un
+     */
+    public boolean removeBreakpoint(int address) {
+        Preconditions.checkBits16(address);
+        if (!breakpoints[address]) {
+            return false;
+        }
+        breakpoints[address] = false;
+        breakpointCount -= 1;
+        updateHooks();
+        return true;
+    }
+
+    /**
+     * Ajoute le point de surveillance donné
+     *
+     * @param watchpoint
+     *            le point de surveillance
+     */
+    public void addWatchpoint(Watchpoint watchpoint) {
+        watchpoints.add(Objects.requireNonNull(watchpoint));
+        updateWatched();
+    }
+
+    /**
+     * Retire le point de surveillance donné
+     *
+     * @param watchpoint
+     *            le point de surveillance
+     * @return vrai ssi il avait été ajouté
+     */
+    public boolean removeWatchpoint(Watchpoint watchpoint) {
+        boolean removed = watchpoints.remove(watchpoint);
+        updateWatched();
+        return removed;
+    }
+
+    /**
+     * Retire tous les points d'arrêt et de surveillance
+     */
+    public void clear() {
+        Arrays.fill(breakpoints, false);
+        breakpointCount = 0;
+        watchpoints.clear();
+        updateWatched();
+    }
+
+    /**
+     * Simule la GameBoy jusqu'au cycle donné (cf. GameBoy.runUntil) ou
+     * jusqu'au premier point d'arrêt ou de surveillance rencontré
+     *
+     * @param cycle
+     *            le cycle à ne pas atteindre
+     * @return la raison de l'arrêt, ou null si le cycle a été atteint
+     */
+    public Stop runUntil(long cycle) {
+        stop = null;
+        gameBoy.runUntil(cycle);
+        lastStop = stop;
+        stop = null;
+        return lastStop;
+    }
+
+    /**
+     * Exécute une instruction (ou le traitement d'une interruption) et
+     * s'arrête avant la suivante, sans atteindre le cycle donné
+     *
+     * @param cycle
+     *            le cycle à ne pas atteindre (un processeur arrêté par HALT
+     *            peut attendre longtemps une interruption)
+     * @return la raison de l'arrêt (STEP sauf si un point de surveillance a
+     *         été rencontré avant), ou null si le cycle a été atteint
+     */
+    public Stop step(long cycle) {
+        stepping = true;
+        updateHooks();
+        try {
+            return runUntil(cycle);
+        } finally {
+            stepping = false;
+            updateHooks();
+        }
+    }
+
+    /**
+     * @return la raison du dernier arrêt, ou null si la dernière simulation a
+     *         atteint son cycle
+     */
+    public Stop lastStop() {
+        return lastStop;
+    }
+
+    private void beforeInstruction(int pc, long cycle) {
+        currentPc = pc;
+        if (stop == null && (stepping || breakpoints[pc])) {
+            stop = new Stop(stepping ? Stop.Kind.STEP : Stop.Kind.BREAKPOINT,
+                    pc, pc, 0, cycle);
+            gameBoy.stopAt(cycle);
+        }
+    }
+
+    private void access(int address, int value, boolean write) {
+        if (stop != null) {
+            return;
+        }
+        for (Watchpoint w : watchpoints) {
+            if (w.matches(address, value, write)) {
+                stop = new Stop(write ? Stop.Kind.WRITE : Stop.Kind.READ,
+                        currentPc, address, value, gameBoy.cycles());
+                gameBoy.stopAt(gameBoy.cycles());
+                return;
+            }
+        }
+    }
+
+    private void updateWatched() {
+        Arrays.fill(watched, (byte) 0);
+        for (Watchpoint w : watchpoints) {
+            int mask = (w.kind() == Watchpoint.Kind.WRITE ? 0 : READ)
+                    | (w.kind() == Watchpoint.Kind.READ ? 0 : WRITE);
+            for (int a = w.start(); a < w.end(); ++a) {
+                watched[a] |= mask;
+            }
+        }
+        updateHooks();
+    }
+
+    /**
+     * Attache les observateurs s'il y a quelque chose à observer, et les
+     * détache sinon. Le Cpu est aussi observé pour les seuls points de
+     * surveillance, afin que les boucles d'attente ne soient pas sautées
+     */
+    private void updateHooks() {
+        boolean watching = !watchpoints.isEmpty();
+        gameBoy.cpu().setInstructionHook(
+                watching || stepping || breakpointCount > 0 ? instructionHook
+                        : null);
+        gameBoy.bus().setAccessHook(watching ? accessHook : null);
+    }
+
+}
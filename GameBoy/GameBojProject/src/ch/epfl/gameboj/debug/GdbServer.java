@@ -0,0 +1,576 @@
+package ch.epfl.gameboj.debug;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import ch.epfl.gameboj.Bus;
+import ch.epfl.gameboj.GameBoy;
+import ch.epfl.gameboj.component.cartridge.Cartridge;
+import ch.epfl.gameboj.component.cpu.Cpu;
+import ch.epfl.gameboj.component.cpu.Cpu.DebugRegister;
+import ch.epfl.gameboj.component.lcd.LcdController;
+
+/**
+ * Classe qui permet de déboguer une GameBoy à distance, avec un client qui
+ * parle le protocole de GDB (« remote serial protocol ») sur une connexion
+ * TCP locale : registres (g, G, p, P, dans l'ordre AF, BC, DE, HL, SP, PC,
+ * 16 bits petit-boutistes), mémoire lue et écrite à travers le bus sans
+ * déclencher de point de surveillance (m, M), pas à pas et reprise (s, c),
+ * interruption (Ctrl-C), points d'arrêt (Z0, Z1) et de surveillance (Z2
+ * écriture, Z3 lecture, Z4 accès) par le Debugger.
+ *
+ * Le réseau est géré par un fil d'exécution séparé, sans blocage (NIO), qui
+ * ne fait que découper les paquets et les transmettre au fil de la
+ * simulation. Celui-ci simule la GameBoy par tranches d'au plus une image
+ * (cf. runUntil) et ne traite les commandes qu'entre deux tranches, donc entre
+ * deux instructions. Un client connecté qui ne demande rien ne coûte qu'un
+ * test par tranche ; sans point d'arrêt ni de surveillance, la simulation est
+ * aussi rapide que sans débogueur.
+ *
+ * Un seul client à la fois est accepté. Sa connexion interrompt la simulation,
+ * comme le veut GDB ; sa déconnexion retire tous les points d'arrêt et de
+ * surveillance et reprend la simulation.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+public final class GdbServer implements Closeable {
+
+    private static final int DEFAULT_PORT = 2159;
+    private static final long SLICE = LcdController.IMAGE_DRAW;
+    private static final int BUFFER_SIZE = 4096;
+    private static final int INTERRUPT = 0x03;
+    private static final String ATTACH = "\u0000attach";
+    private static final String DETACH = "\u0000detach";
+    private static final String BREAK = "\u0003";
+    private static final int SIGINT = 2, SIGTRAP = 5;
+
+    private final GameBoy gameBoy;
+    private final Debugger debugger;
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final Thread networkThread;
+
+    // Fil du réseau vers fil de la simulation, et inversement
+    private final BlockingQueue<String> commands = new LinkedBlockingQueue<>();
+    private final ConcurrentLinkedQueue<ByteBuffer> replies =
+            new ConcurrentLinkedQueue<>();
+    private volatile boolean closed = false;
+
+    // Etat du fil du réseau
+    private SocketChannel client = null;
+    private final ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+    private final StringBuilder packet = new StringBuilder();
+    private int packetState = 0;
+    private int checksum = 0;
+
+    // Etat du fil de la simulation
+    private final Map<String, Watchpoint> watchpoints = new HashMap<>();
+    private boolean paused = false;
+    private boolean stepping = false;
+
+    /**
+     * Construit un serveur de débogage pour la GameBoy donnée, qui écoute sur
+     * le port donné de l'interface locale, et démarre son fil du réseau
+     *
+     * @param gameBoy
+     *            la GameBoy, simulée par runUntil
+     * @param port
+     *            le port TCP (0 pour en choisir un libre, cf. port)
+     * @throws IOException
+     *             si le port ne peut pas être ouvert
+     */
+    public GdbServer(GameBoy gameBoy, int port) throws IOException {
+        this.gameBoy = Objects.requireNonNull(gameBoy);
+        this.debugger = new Debugger(gameBoy);
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        this.networkThread = new Thread(this::serve, "gameboj-gdb");
+        networkThread.setDaemon(true);
+        networkThread.start();
+    }
+
+    /**
+     * @return le port TCP sur lequel le serveur écoute
+     */
+    public int port() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * @return le débogueur utilisé par le serveur
+     */
+    public Debugger debugger() {
+        return debugger;
+    }
+
+    /**
+     * Methode qui simule la GameBoy jusqu'au cycle donné (cf.
+     * GameBoy.runUntil), en traitant les commandes du client entre deux
+     * tranches. A appeler depuis le fil de la simulation, à la place de
+     * GameBoy.runUntil ; bloque tant que le client a interrompu la simulation
+     *
+     * @param cycle
+     *            le cycle à atteindre
+     */
+    public void runUntil(long cycle) {
+        while (gameBoy.cycles() < cycle) {
+            String command;
+            while ((command = commands.poll()) != null) {
+                handle(command);
+            }
+            while (paused) {
+                try {
+                    handle(commands.take());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            long limit = Math.min(cycle, gameBoy.cycles() + SLICE);
+            Stop stop = stepping ? debugger.step(limit)
+                    : debugger.runUntil(limit);
+            if (stop != null) {
+                paused = true;
+                stepping = false;
+                send(stopReply(stop));
+            }
+        }
+    }
+
+    /**
+     * Methode qui interrompt la simulation jusqu'à ce qu'un client la
+     * reprenne (utile pour attendre un client avant la première instruction).
+     * A appeler depuis le fil de la simulation
+     */
+    public void pause() {
+        paused = true;
+    }
+
+    /**
+     * Ferme la connexion et le port, arrête le fil du réseau et reprend la
+     * simulation si elle était interrompue
+     *
+     * @throws IOException
+     *             en cas d'erreur à la fermeture du port
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            networkThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        commands.add(DETACH);
+        serverChannel.close();
+        selector.close();
+    }
+
+    /*
+     * Fil de la simulation
+     */
+
+    private void handle(String command) {
+        if (command.equals(ATTACH) || command.equals(BREAK)) {
+            if (!paused) {
+                paused = true;
+                stepping = false;
+                if (command.equals(BREAK)) {
+                    send(String.format("S%02x", SIGINT));
+                }
+            }
+            return;
+        }
+        if (command.equals(DETACH)) {
+            detach();
+            return;
+        }
+
+        String reply;
+        try {
+            reply = reply(command);
+        } catch (RuntimeException e) {
+            reply = "E01";
+        }
+        if (reply != null) {
+            send(reply);
+        }
+    }
+
+    /**
+     * Exécute la commande donnée et retourne la réponse à envoyer, ou null
+     * si la réponse n'est envoyée qu'au prochain arrêt
+     */
+    private String reply(String command) {
+        char c = command.isEmpty() ? ' ' : command.charAt(0);
+        String args = command.isEmpty() ? "" : command.substring(1);
+        Cpu cpu = gameBoy.cpu();
+        Bus bus = gameBoy.bus();
+
+        switch (c) {
+        case '?':
+            return String.format("S%02x", SIGTRAP);
+        case 'g': {
+            StringBuilder b = new StringBuilder();
+            for (DebugRegister r : DebugRegister.values()) {
+                appendLittleEndian(b, cpu.debugRegister(r));
+            }
+            return b.toString();
+        }
+        case 'G': {
+            DebugRegister[] registers = DebugRegister.values();
+            for (int i = 0; i < registers.length; ++i) {
+                cpu.setDebugRegister(registers[i],
+                        parseLittleEndian(args.substring(4 * i, 4 * i + 4)));
+            }
+            return "OK";
+        }
+        case 'p': {
+            StringBuilder b = new StringBuilder();
+            appendLittleEndian(b, cpu.debugRegister(register(args)));
+            return b.toString();
+        }
+        case 'P': {
+            String[] parts = args.split("=");
+            cpu.setDebugRegister(register(parts[0]),
+                    parseLittleEndian(parts[1]));
+            return "OK";
+        }
+        case 'm': {
+            String[] parts = args.split(",");
+            int address = Integer.parseInt(parts[0], 16);
+            int length = Integer.parseInt(parts[1], 16);
+            StringBuilder b = new StringBuilder();
+            for (int i = 0; i < length; ++i) {
+                b.append(String.format("%02x",
+                        bus.peek((address + i) & 0xFFFF)));
+            }
+            return b.toString();
+        }
+        case 'M': {
+            String[] parts = args.split("[,:]");
+            int address = Integer.parseInt(parts[0], 16);
+            int length = Integer.parseInt(parts[1], 16);
+            String data = parts.length > 2 ? parts[2] : "";
+            for (int i = 0; i < length; ++i) {
+                bus.poke((address + i) & 0xFFFF, Integer
+                        .parseInt(data.substring(2 * i, 2 * i + 2), 16));
+            }
+            return "OK";
+        }
+        case 'c':
+        case 's':
+            if (!args.isEmpty()) {
+                cpu.setDebugRegister(DebugRegister.PC,
+                        Integer.parseInt(args, 16));
+            }
+            paused = false;
+            stepping = c == 's';
+            return null;
+        case 'Z':
+        case 'z':
+            return point(c == 'Z', args);
+        case 'D':
+            detach();
+            return "OK";
+        case 'k':
+            detach();
+            return null;
+        case 'H':
+            return "OK";
+        default:
+            if (command.startsWith("qSupported")) {
+                return "PacketSize=" + Integer.toHexString(BUFFER_SIZE);
+            } else if (command.equals("qAttached")) {
+                return "1";
+            }
+            return "";
+        }
+    }
+
+    /**
+     * Ajoute ou retire le point d'arrêt ou de surveillance décrit par les
+     * arguments donnés (type,adresse,taille) d'une commande Z ou z
+     */
+    private String point(boolean add, String args) {
+        String[] parts = args.split(",");
+        int type = Integer.parseInt(parts[0]);
+        int address = Integer.parseInt(parts[1], 16);
+        int length = Integer.parseInt(parts[2], 16);
+
+        if (type == 0 || type == 1) {
+            if (add) {
+                debugger.addBreakpoint(address);
+            } else {
+                debugger.removeBreakpoint(address);
+            }
+            return "OK";
+        }
+
+        Watchpoint.Kind kind;
+        switch (type) {
+        case 2:
+            kind = Watchpoint.Kind.WRITE;
+            break;
+        case 3:
+            kind = Watchpoint.Kind.READ;
+            break;
+        case 4:
+            kind = Watchpoint.Kind.ACCESS;
+            break;
+        default:
+            return "";
+        }
+        if (add) {
+            Watchpoint w = Watchpoint.of(address,
+                    Math.min(address + length, 0x10000), kind, v -> true);
+            Watchpoint old = watchpoints.put(args, w);
+            if (old != null) {
+                debugger.removeWatchpoint(old);
+            }
+            debugger.addWatchpoint(w);
+        } else {
+            Watchpoint w = watchpoints.remove(args);
+            if (w != null) {
+                debugger.removeWatchpoint(w);
+            }
+        }
+        return "OK";
+    }
+
+    private void detach() {
+        debugger.clear();
+        watchpoints.clear();
+        paused = false;
+        stepping = false;
+    }
+
+    private static String stopReply(Stop stop) {
+        switch (stop.kind()) {
+        case READ:
+            return String.format("T%02xrwatch:%04x;", SIGTRAP,
+                    stop.address());
+        case WRITE:
+            return String.format("T%02xwatch:%04x;", SIGTRAP, stop.address());
+        default:
+            return String.format("S%02x", SIGTRAP);
+        }
+    }
+
+    private static DebugRegister register(String hex) {
+        return DebugRegister.values()[Integer.parseInt(hex, 16)];
+    }
+
+    private static void appendLittleEndian(StringBuilder b, int value) {
+        b.append(String.format("%02x%02x", value & 0xFF, value >>> 8));
+    }
+
+    private static int parseLittleEndian(String hex) {
+        int value = Integer.parseInt(hex, 16);
+        return (value & 0xFF) << 8 | value >>> 8;
+    }
+
+    /**
+     * Envoie le paquet contenant la réponse donnée (par le fil du réseau)
+     */
+    private void send(String payload) {
+        int sum = 0;
+        for (int i = 0; i < payload.length(); ++i) {
+            sum += payload.charAt(i);
+        }
+        String framed = String.format("$%s#%02x", payload, sum & 0xFF);
+        replies.add(ByteBuffer
+                .wrap(framed.getBytes(StandardCharsets.US_ASCII)));
+        selector.wakeup();
+    }
+
+    /*
+     * Fil du réseau
+     */
+
+    private void serve() {
+        try {
+            while (!closed) {
+                selector.select();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        receive();
+                    }
+                }
+                selector.selectedKeys().clear();
+                flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Débogueur arrêté : " + e.getMessage());
+        } finally {
+            disconnect();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        if (client != null) {
+            channel.close();
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ);
+        client = channel;
+        replies.clear();
+        packetState = 0;
+        commands.add(ATTACH);
+    }
+
+    private void receive() {
+        try {
+            input.clear();
+            if (client.read(input) < 0) {
+                disconnect();
+                return;
+            }
+        } catch (IOException e) {
+            disconnect();
+            return;
+        }
+        input.flip();
+        while (input.hasRemaining()) {
+            parse(input.get() & 0xFF);
+        }
+    }
+
+    /**
+     * Avance d'un octet dans le découpage des paquets : $données#ss, précédés
+     * ou non d'accusés de réception (+ ou -, ignorés) ou d'un Ctrl-C
+     */
+    private void parse(int b) {
+        switch (packetState) {
+        case 0:
+            if (b == '$') {
+                packet.setLength(0);
+                checksum = 0;
+                packetState = 1;
+            } else if (b == INTERRUPT) {
+                commands.add(BREAK);
+            }
+            break;
+        case 1:
+            if (b == '#') {
+                packetState = 2;
+            } else {
+                packet.append((char) b);
+                checksum += b;
+            }
+            break;
+        case 2:
+            checksum -= Character.digit(b, 16) << 4;
+            packetState = 3;
+            break;
+        default:
+            checksum -= Character.digit(b, 16);
+            packetState = 0;
+            boolean valid = (checksum & 0xFF) == 0;
+            byte ack = (byte) (valid ? '+' : '-');
+            replies.add(ByteBuffer.wrap(new byte[] { ack }));
+            if (valid) {
+                commands.add(packet.toString());
+            }
+        }
+    }
+
+    private void flush() {
+        ByteBuffer reply;
+        while ((reply = replies.peek()) != null) {
+            if (client == null) {
+                replies.clear();
+                return;
+            }
+            try {
+                client.write(reply);
+            } catch (IOException e) {
+                disconnect();
+                return;
+            }
+            if (reply.hasRemaining()) {
+                // Le tampon d'envoi est plein : on réessaie au prochain tour
+                client.keyFor(selector).interestOps(
+                        SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            replies.poll();
+        }
+        if (client != null && client.keyFor(selector) != null) {
+            client.keyFor(selector).interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void disconnect() {
+        if (client == null) {
+            return;
+        }
+        try {
+            client.close();
+        } catch (IOException e) {
+            // la connexion est abandonnée de toute façon
+        }
+        client = null;
+        commands.add(DETACH);
+    }
+
+    /**
+     * Simule sans interface la rom donnée sous le contrôle d'un client GDB :
+     * la simulation attend le client avant la première instruction
+     *
+     * @param args
+     *            la rom, puis éventuellement le port (par défaut 2159)
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: GdbServer <rom> [port]");
+            System.exit(1);
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        GameBoy gameBoy = new GameBoy(
+                Cartridge.ofPath(Path.of(args[0]), Cartridge.NO_SAVE));
+        try (GdbServer server = new GdbServer(gameBoy, port)) {
+            System.out.println("En attente de GDB sur le port " + server.port());
+            server.pause();
+            while (!Thread.currentThread().isInterrupted()) {
+                server.runUntil(gameBoy.cycles() + SLICE);
+            }
+        }
+    }
+
+}
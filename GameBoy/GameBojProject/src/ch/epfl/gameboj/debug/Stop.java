@@ -0,0 +1,83 @@
+package ch.epfl.gameboj.debug;
+
+import java.util.Objects;
+
+/**
+ * Classe qui décrit la raison pour laquelle le Debugger a interrompu la
+ * simulation
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+public final class Stop {
+
+    /**
+     * Raison de l'arrêt
+     */
+    public enum Kind {
+        /** point d'arrêt : l'instruction à l'adresse pc n'a pas été exécutée */
+        BREAKPOINT,
+        /** pas à pas : l'instruction à l'adresse pc n'a pas été exécutée */
+        STEP,
+        /** lecture surveillée par l'instruction à l'adresse pc, terminée */
+        READ,
+        /** écriture surveillée par l'instruction à l'adresse pc, terminée */
+        WRITE
+    }
+
+    private final Kind kind;
+    private final int pc;
+    private final int address;
+    private final int value;
+    private final long cycle;
+
+    Stop(Kind kind, int pc, int address, int value, long cycle) {
+        this.kind = Objects.requireNonNull(kind);
+        this.pc = pc;
+        this.address = address;
+        this.value = value;
+        this.cycle = cycle;
+    }
+
+    /**
+     * @return la raison de l'arrêt
+     */
+    public Kind kind() {
+        return kind;
+    }
+
+    /**
+     * @return l'adresse de l'instruction concernée
+     */
+    public int pc() {
+        return pc;
+    }
+
+    /**
+     * @return l'adresse accédée (READ et WRITE), sinon pc
+     */
+    public int address() {
+        return address;
+    }
+
+    /**
+     * @return la valeur lue ou écrite (READ et WRITE), sinon 0
+     */
+    public int value() {
+        return value;
+    }
+
+    /**
+     * @return le cycle de l'instruction concernée
+     */
+    public long cycle() {
+        return cycle;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s pc=%04X address=%04X value=%02X cycle=%d",
+                kind, pc, address, value, cycle);
+    }
+
+}
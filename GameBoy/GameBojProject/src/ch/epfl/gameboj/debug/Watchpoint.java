@@ -0,0 +1,136 @@
+package ch.epfl.gameboj.debug;
+
+import java.util.Objects;
+import java.util.function.IntPredicate;
+
+import ch.epfl.gameboj.Preconditions;
+
+/**
+ * Classe qui représente un point de surveillance : une plage d'adresses, le
+ * type d'accès surveillé et, éventuellement, une condition sur la valeur lue
+ * ou écrite (cf. Debugger.addWatchpoint)
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+public final class Watchpoint {
+
+    /**
+     * Type d'accès surveillé
+     */
+    public enum Kind {
+        READ, WRITE, ACCESS
+    }
+
+    private static final IntPredicate ANY_VALUE = v -> true;
+
+    private final int start, end;
+    private final Kind kind;
+    private final IntPredicate condition;
+
+    private Watchpoint(int start, int end, Kind kind, IntPredicate condition) {
+        Preconditions.checkBits16(start);
+        Preconditions.checkArgument(end > start && end <= 0x10000);
+        this.start = start;
+        this.end = end;
+        this.kind = Objects.requireNonNull(kind);
+        this.condition = Objects.requireNonNull(condition);
+    }
+
+    /**
+     * Construit un point de surveillance des accès du type donné aux adresses
+     * de start (inclus) à end (exclus), déclenché seulement si la valeur lue
+     * ou écrite satisfait la condition donnée
+     *
+     * @param start
+     *            la première adresse surveillée
+     * @param end
+     *            l'adresse qui suit la dernière adresse surveillée
+     * @param kind
+     *            le type d'accès surveillé
+     * @param condition
+     *            la condition sur la valeur (8 bits)
+     * @return le point de surveillance
+     * @throws IllegalArgumentException
+     *             si la plage n'est pas valide
+     */
+    public static Watchpoint of(int start, int end, Kind kind,
+            IntPredicate condition) {
+        return new Watchpoint(start, end, kind, condition);
+    }
+
+    /**
+     * Construit un point de surveillance des accès du type donné à l'adresse
+     * donnée, quelle que soit la valeur
+     *
+     * @param address
+     *            l'adresse surveillée
+     * @param kind
+     *            le type d'accès surveillé
+     * @return le point de surveillance
+     */
+    public static Watchpoint of(int address, Kind kind) {
+        return new Watchpoint(address, address + 1, kind, ANY_VALUE);
+    }
+
+    /**
+     * Construit un point de surveillance des écritures de la valeur donnée à
+     * l'adresse donnée
+     *
+     * @param address
+     *            l'adresse surveillée
+     * @param value
+     *            la valeur attendue (8 bits)
+     * @return le point de surveillance
+     */
+    public static Watchpoint writeOf(int address, int value) {
+        Preconditions.checkBits8(value);
+        return new Watchpoint(address, address + 1, Kind.WRITE,
+                v -> v == value);
+    }
+
+    /**
+     * @return la première adresse surveillée
+     */
+    public int start() {
+        return start;
+    }
+
+    /**
+     * @return l'adresse qui suit la dernière adresse surveillée
+     */
+    public int end() {
+        return end;
+    }
+
+    /**
+     * @return le type d'accès surveillé
+     */
+    public Kind kind() {
+        return kind;
+    }
+
+    /**
+     * Methode qui indique si l'accès donné déclenche ce point de surveillance
+     *
+     * @param address
+     *            l'adresse accédée
+     * @param value
+     *            la valeur lue ou écrite
+     * @param write
+     *            vrai ssi l'accès est une écriture
+     * @return vrai ssi l'accès est surveillé et la valeur satisfait la
+     *         condition
+     */
+    boolean matches(int address, int value, boolean write) {
+        return address >= start && address < end
+                && kind != (write ? Kind.READ : Kind.WRITE)
+                && condition.test(value);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [%04X, %04X)", kind, start, end);
+    }
+
+}
@@ -0,0 +1,364 @@
+package ch.epfl.gameboj.env;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Objects;
+
+import ch.epfl.gameboj.GameBoy;
+import ch.epfl.gameboj.MemoryView;
+import ch.epfl.gameboj.Preconditions;
+import ch.epfl.gameboj.component.Joypad;
+import ch.epfl.gameboj.component.Joypad.Key;
+import ch.epfl.gameboj.component.cartridge.Cartridge;
+import ch.epfl.gameboj.component.lcd.LcdController;
+import ch.epfl.gameboj.component.lcd.LcdImage;
+
+/**
+ * Classe qui présente une GameBoy comme un environnement d'apprentissage par
+ * renforcement : reset remet la GameBoy dans un état de départ (cf.
+ * GameBoy.snapshot), step applique une action (les touches pressées) pendant
+ * un nombre d'images donné puis écrit l'observation dans un tampon fourni par
+ * l'appelant (de préférence direct, pour être partagé sans copie avec du code
+ * natif).
+ *
+ * Une observation contient d'abord l'image affichée, réduite d'un facteur
+ * donné (le pixel en haut à gauche de chaque bloc est gardé) et écrite au
+ * format choisi (cf. Format), ligne par ligne, puis la valeur des octets
+ * choisis des mémoires vives, lus directement dans la mémoire (sans passer par
+ * le bus, cf. MemoryView). La récompense et la fin d'un épisode dépendent du jeu : elles sont à
+ * calculer à partir de ces octets.
+ *
+ * Seule la dernière image de chaque step est dessinée (cf.
+ * LcdController.setRenderingEnabled) ; les autres ne coûtent que la
+ * simulation (sauf au premier step après reset et tant que l'écran est
+ * éteint). L'observation est identique à celle d'une GameBoy qui dessine
+ * toutes ses images. Une instance n'est pas sûre pour un usage concurrent, mais
+ * plusieurs instances peuvent être simulées en parallèle (cf. VectorEnv).
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+public final class GameBoyEnv implements Closeable {
+
+    /**
+     * Format de l'image d'une observation
+     */
+    public enum Format {
+        /** 2 bits par pixel (couleur 0 à 3), 4 pixels par octet, le premier
+         * dans les bits de poids fort */
+        TWO_BPP,
+        /** 1 octet par pixel, de 255 (couleur 0, blanc) à 0 (couleur 3) */
+        GRAYSCALE
+    }
+
+    private static final Key[] KEYS = Key.values();
+    private static final int PIXELS_BY_BYTE = 4;
+    private static final int GRAY_STEP = 85;
+    private static final int WHITE = 0xFF;
+
+    private final Cartridge cartridge;
+    private final GameBoy gameBoy;
+    private final Format format;
+    private final int downsample;
+    private final int width, height;
+    private final int[] ramAddresses;
+    private final byte[] observation;
+    private GameBoy.Snapshot resetState;
+    private int action = 0;
+    private boolean atFrameEnd = false;
+
+    /**
+     * Construit un environnement sur une GameBoy neuve contenant la cartouche
+     * donnée ; l'état de départ est celui de la GameBoy à sa mise en marche
+     *
+     * @param cartridge
+     *            la cartouche (fermée par close)
+     * @param format
+     *            le format de l'image des observations
+     * @param downsample
+     *            le facteur de réduction de l'image, qui doit diviser la
+     *            largeur et la hauteur de l'écran (1, 2, 4, 8 ou 16)
+     * @param ramAddresses
+     *            les adresses (ramVideo, workRam, echoRam, OAM ou mémoire
+     *            haute, cf. MemoryView.isMapped) des octets à ajouter aux
+     *            observations
+     * @throws IllegalArgumentException
+     *             si le facteur ou une des adresses n'est pas valide
+     */
+    public GameBoyEnv(Cartridge cartridge, Format format, int downsample,
+            int... ramAddresses) {
+        Preconditions.checkArgument(downsample > 0
+                && LcdController.LCD_WIDTH % downsample == 0
+                && LcdController.LCD_HEIGHT % downsample == 0);
+        this.cartridge = Objects.requireNonNull(cartridge);
+        this.format = Objects.requireNonNull(format);
+        this.downsample = downsample;
+        this.width = LcdController.LCD_WIDTH / downsample;
+        this.height = LcdController.LCD_HEIGHT / downsample;
+
+        this.gameBoy = new GameBoy(cartridge);
+        for (int address : ramAddresses) {
+            Preconditions.checkArgument(
+                    gameBoy.memoryView().isMapped(address));
+        }
+        this.ramAddresses = ramAddresses.clone();
+        this.observation = new byte[frameSize() + ramAddresses.length];
+        this.resetState = gameBoy.snapshot();
+    }
+
+    /**
+     * Construit un environnement pour la rom donnée, sans fichier de
+     * sauvegarde (cf. Cartridge.NO_SAVE) : tous les environnements d'une même
+     * rom partent du même état et évoluent de la même manière
+     *
+     * @param romFile
+     *            le fichier de la rom
+     * @param format
+     *            le format de l'image des observations
+     * @param downsample
+     *            le facteur de réduction de l'image
+     * @param ramAddresses
+     *            les adresses des octets à ajouter aux observations
+     * @return l'environnement
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie
+     */
+    public static GameBoyEnv of(Path romFile, Format format, int downsample,
+            int... ramAddresses) throws IOException {
+        return new GameBoyEnv(Cartridge.ofPath(romFile, Cartridge.NO_SAVE),
+                format, downsample, ramAddresses);
+    }
+
+    /**
+     * @return la GameBoy simulée
+     */
+    public GameBoy gameBoy() {
+        return gameBoy;
+    }
+
+    /**
+     * @return la taille (en octets) de l'image d'une observation
+     */
+    public int frameSize() {
+        int pixels = width * height;
+        return format == Format.TWO_BPP
+                ? (pixels + PIXELS_BY_BYTE - 1) / PIXELS_BY_BYTE
+                : pixels;
+    }
+
+    /**
+     * @return la taille (en octets) d'une observation complète
+     */
+    public int observationSize() {
+        return observation.length;
+    }
+
+    /**
+     * @return la largeur (en pixels) de l'image d'une observation
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * @return la hauteur (en pixels) de l'image d'une observation
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Capture l'état actuel de la GameBoy, y compris les touches pressées
+     * (cf. GameBoy.snapshot)
+     *
+     * @return l'état capturé
+     */
+    public GameBoy.Snapshot snapshot() {
+        return gameBoy.snapshot();
+    }
+
+    /**
+     * Change l'état de départ des épisodes (utilisé par les prochains appels à
+     * reset)
+     *
+     * @param snapshot
+     *            l'état de départ, capturé sur un environnement de la même rom
+     */
+    public void setResetState(GameBoy.Snapshot snapshot) {
+        this.resetState = Objects.requireNonNull(snapshot);
+    }
+
+    /**
+     * Remet la GameBoy dans l'état de départ
+     */
+    public void reset() {
+        reset(resetState);
+    }
+
+    /**
+     * Remet la GameBoy dans l'état donné, sans changer l'état de départ
+     *
+     * @param snapshot
+     *            l'état à restaurer, capturé sur un environnement de la même
+     *            rom
+     */
+    public void reset(GameBoy.Snapshot snapshot) {
+        gameBoy.restore(snapshot);
+        atFrameEnd = false;
+        Joypad joypad = gameBoy.joypad();
+        action = 0;
+        for (Key k : KEYS) {
+            if (joypad.isPressed(k)) {
+                action |= 1 << k.ordinal();
+            }
+        }
+    }
+
+    /**
+     * Remet la GameBoy dans l'état de départ puis écrit l'observation dans le
+     * tampon donné (cf. observe)
+     *
+     * @param out
+     *            le tampon dans lequel écrire l'observation
+     * @return le tampon
+     */
+    public ByteBuffer reset(ByteBuffer out) {
+        reset();
+        return observe(out);
+    }
+
+    /**
+     * Presse les touches de l'action donnée (et relâche les autres), simule
+     * la GameBoy image par image pendant le nombre d'images donné (cf.
+     * GameBoy.runFrames(1) pour le cas où l'écran est éteint) puis écrit
+     * l'observation dans le tampon donné
+     *
+     * @param action
+     *            les touches à presser : le bit i vaut 1 ssi la touche
+     *            d'ordinal i (cf. Joypad.Key) est pressée
+     * @param frames
+     *            le nombre d'images à simuler (strictement positif)
+     * @param out
+     *            le tampon dans lequel écrire l'observation
+     * @return le tampon
+     * @throws IllegalArgumentException
+     *             si l'action contient d'autres bits que ceux des touches ou
+     *             si le nombre d'images n'est pas valide
+     */
+    public ByteBuffer step(int action, int frames, ByteBuffer out) {
+        Preconditions.checkArgument((action >>> KEYS.length) == 0);
+        Preconditions.checkArgument(frames > 0);
+        setAction(action);
+
+        // le dessin n'est activé ou désactivé qu'au début d'une image : les
+        // images intermédiaires ne sont sautées que si la GameBoy est au
+        // début d'une période de retour de trame, ce qui n'est pas le cas
+        // après une restauration ou si l'écran a été éteint
+        LcdController lcd = gameBoy.lcdController();
+        boolean render = !atFrameEnd;
+        for (int i = 1; i < frames; ++i) {
+            lcd.setRenderingEnabled(render);
+            render |= !runFrame();
+        }
+        lcd.setRenderingEnabled(true);
+        atFrameEnd = runFrame();
+        return observe(out);
+    }
+
+    /**
+     * Écrit l'observation de l'état actuel dans le tampon donné, à partir de
+     * sa position courante (qui avance de observationSize), d'une seule copie
+     *
+     * @param out
+     *            le tampon dans lequel écrire l'observation
+     * @return le tampon
+     * @throws java.nio.BufferOverflowException
+     *             s'il reste moins de observationSize octets dans le tampon
+     */
+    public ByteBuffer observe(ByteBuffer out) {
+        LcdImage image = gameBoy.lcdController().currentImage();
+        if (format == Format.TWO_BPP) {
+            writeTwoBpp(image);
+        } else {
+            writeGrayscale(image);
+        }
+
+        MemoryView memory = gameBoy.memoryView();
+        int offset = frameSize();
+        for (int i = 0; i < ramAddresses.length; ++i) {
+            observation[offset + i] = (byte) memory.read(ramAddresses[i]);
+        }
+        return out.put(observation);
+    }
+
+    /**
+     * Ferme la cartouche
+     *
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie
+     */
+    @Override
+    public void close() throws IOException {
+        cartridge.close();
+    }
+
+    /**
+     * Simule une image, et retourne vrai ssi elle a été terminée (faux si
+     * l'écran était éteint)
+     */
+    private boolean runFrame() {
+        long frame = gameBoy.lcdController().frameCount();
+        gameBoy.runFrames(1);
+        return gameBoy.lcdController().frameCount() != frame;
+    }
+
+    private void setAction(int newAction) {
+        int changed = action ^ newAction;
+        Joypad joypad = gameBoy.joypad();
+        for (Key k : KEYS) {
+            int bit = 1 << k.ordinal();
+            if ((changed & bit) != 0) {
+                if ((newAction & bit) != 0) {
+                    joypad.keyPressed(k);
+                } else {
+                    joypad.keyReleased(k);
+                }
+            }
+        }
+        action = newAction;
+    }
+
+    private void writeTwoBpp(LcdImage image) {
+        int packed = 0;
+        int index = 0;
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                packed = packed << 2
+                        | image.get(x * downsample, y * downsample);
+                index += 1;
+                if (index % PIXELS_BY_BYTE == 0) {
+                    observation[index / PIXELS_BY_BYTE - 1] = (byte) packed;
+                    packed = 0;
+                }
+            }
+        }
+        int rest = index % PIXELS_BY_BYTE;
+        if (rest != 0) {
+            observation[index / PIXELS_BY_BYTE] = (byte) (packed << 2
+                    * (PIXELS_BY_BYTE - rest));
+        }
+    }
+
+    private void writeGrayscale(LcdImage image) {
+        int index = 0;
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                observation[index++] = (byte) (WHITE - GRAY_STEP
+                        * image.get(x * downsample, y * downsample));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,243 @@
+package ch.epfl.gameboj.env;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+import ch.epfl.gameboj.Preconditions;
+import ch.epfl.gameboj.component.Joypad;
+
+/**
+ * Classe qui simule en parallèle plusieurs environnements (cf. GameBoyEnv)
+ * ayant des observations de même taille. Les environnements sont répartis en
+ * autant de groupes contigus que de fils d'exécution ; chaque groupe est
+ * simulé par un seul fil, qui écrit les observations de ses environnements
+ * directement à leur place dans le tampon commun : l'observation de
+ * l'environnement i commence à l'octet i * observationSize() (depuis la
+ * position courante du tampon, qui ne change pas).
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+public final class VectorEnv implements Closeable {
+
+    private final GameBoyEnv[] envs;
+    private final int observationSize;
+    private final int groups;
+    private final ExecutorService executor;
+
+    /**
+     * Construit un ensemble d'environnements simulés par le nombre donné de
+     * fils d'exécution
+     *
+     * @param envs
+     *            les environnements (fermés par close)
+     * @param threads
+     *            le nombre de fils d'exécution (au moins 1)
+     * @throws IllegalArgumentException
+     *             si la liste est vide, si les observations n'ont pas toutes
+     *             la même taille ou si le nombre de fils n'est pas valide
+     */
+    public VectorEnv(List<GameBoyEnv> envs, int threads) {
+        Preconditions.checkArgument(!envs.isEmpty() && threads > 0);
+        this.envs = envs.toArray(new GameBoyEnv[0]);
+        this.observationSize = this.envs[0].observationSize();
+        for (GameBoyEnv env : this.envs) {
+            Preconditions.checkArgument(
+                    env.observationSize() == observationSize);
+        }
+        this.groups = Math.min(threads, this.envs.length);
+        this.executor = Executors.newFixedThreadPool(groups, r -> {
+            Thread t = new Thread(r, "gameboj-env");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @return le nombre d'environnements
+     */
+    public int size() {
+        return envs.length;
+    }
+
+    /**
+     * @return l'environnement d'index donné
+     */
+    public GameBoyEnv env(int index) {
+        return envs[index];
+    }
+
+    /**
+     * @return la taille (en octets) de l'observation d'un environnement
+     */
+    public int observationSize() {
+        return observationSize;
+    }
+
+    /**
+     * Remet tous les environnements dans leur état de départ (cf.
+     * GameBoyEnv.reset) et écrit leurs observations dans le tampon donné
+     *
+     * @param out
+     *            le tampon, d'au moins size() * observationSize() octets
+     * @return le tampon
+     */
+    public ByteBuffer reset(ByteBuffer out) {
+        checkCapacity(out);
+        forEach(i -> envs[i].reset(slot(out, i)));
+        return out;
+    }
+
+    /**
+     * Fait un pas dans chaque environnement (cf. GameBoyEnv.step), en
+     * parallèle, et écrit leurs observations dans le tampon donné
+     *
+     * @param actions
+     *            l'action de chaque environnement
+     * @param frames
+     *            le nombre d'images à simuler par environnement
+     * @param out
+     *            le tampon, d'au moins size() * observationSize() octets
+     * @return le tampon
+     * @throws IllegalArgumentException
+     *             s'il n'y a pas une action par environnement, ou si une
+     *             action ou le nombre d'images n'est pas valide
+     */
+    public ByteBuffer step(int[] actions, int frames, ByteBuffer out) {
+        Preconditions.checkArgument(actions.length == envs.length);
+        checkCapacity(out);
+        forEach(i -> envs[i].step(actions[i], frames, slot(out, i)));
+        return out;
+    }
+
+    /**
+     * Arrête les fils d'exécution et ferme les environnements
+     *
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie lors de la fermeture d'un
+     *             environnement
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        IOException error = null;
+        for (GameBoyEnv env : envs) {
+            try {
+                env.close();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void checkCapacity(ByteBuffer out) {
+        Objects.requireNonNull(out);
+        Preconditions.checkArgument(
+                out.remaining() >= envs.length * observationSize);
+    }
+
+    private ByteBuffer slot(ByteBuffer out, int index) {
+        int start = out.position() + index * observationSize;
+        return out.duplicate().position(start).limit(start + observationSize);
+    }
+
+    /**
+     * Appelle l'action donnée pour l'index de chaque environnement, chaque
+     * groupe d'environnements dans son propre fil, et attend la fin de tous
+     * les groupes
+     */
+    private void forEach(IntConsumer action) {
+        List<Callable<Void>> tasks = new ArrayList<>(groups);
+        for (int g = 0; g < groups; ++g) {
+            int from = g * envs.length / groups;
+            int to = (g + 1) * envs.length / groups;
+            tasks.add(() -> {
+                for (int i = from; i < to; ++i) {
+                    action.accept(i);
+                }
+                return null;
+            });
+        }
+
+        try {
+            for (Future<Void> f : executor.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Mesure le débit (pas par seconde) de size environnements de la rom
+     * donnée, avec des actions aléatoires
+     *
+     * @param args
+     *            la rom, puis éventuellement le nombre d'environnements (par
+     *            défaut le nombre de processeurs), le nombre d'images par pas
+     *            (4) et la durée de la mesure en secondes (10)
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 4) {
+            System.err.println(
+                    "Usage: VectorEnv <rom> [envs] [frames] [seconds]");
+            System.exit(1);
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : cores;
+        int frames = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        long seconds = args.length > 3 ? Long.parseLong(args[3]) : 10;
+
+        List<GameBoyEnv> list = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            list.add(GameBoyEnv.of(Path.of(args[0]),
+                    GameBoyEnv.Format.TWO_BPP, 2));
+        }
+        try (VectorEnv vector = new VectorEnv(list, cores)) {
+            ByteBuffer out = ByteBuffer
+                    .allocateDirect(count * vector.observationSize());
+            int[] actions = new int[count];
+            Random random = new Random(0);
+            vector.reset(out);
+
+            long steps = 0;
+            long start = System.nanoTime();
+            long end = start + seconds * 1_000_000_000L;
+            while (System.nanoTime() < end) {
+                for (int i = 0; i < count; ++i) {
+                    actions[i] = random.nextInt(1 << Joypad.Key.values().length);
+                }
+                vector.step(actions, frames, out);
+                steps += count;
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d envs, %d threads, %d frames/step: "
+                    + "%.0f steps/s (%.0f frames/s)%n", count, cores, frames,
+                    steps / elapsed, steps * frames / elapsed);
+        }
+    }
+
+}
@@ -1,16 +1,26 @@
 package ch.epfl.gameboj.gui;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.sound.sampled.LineUnavailableException;
+
 import ch.epfl.gameboj.GameBoy;
+import ch.epfl.gameboj.Metrics;
 import ch.epfl.gameboj.component.Joypad;
 import ch.epfl.gameboj.component.cartridge.Cartridge;
 import ch.epfl.gameboj.component.lcd.LcdController;
+import ch.epfl.gameboj.component.lcd.LcdImage;
+import ch.epfl.gameboj.component.sound.AudioOutput;
+import ch.epfl.gameboj.component.sound.SampleBuffer;
+import ch.epfl.gameboj.movie.InputRecorder;
 import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.scene.Scene;
+import javafx.scene.control.Label;
 import javafx.scene.control.ToolBar;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.KeyCode;
@@ -18,9 +28,23 @@ import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
+import javafx.stage.WindowEvent;
 
 public final class Main extends Application {
 
+    private static final double DEFAULT_TURBO_SPEED = 4;
+    private static final String USAGE = "Usage: Main <rom> [turbo speed > 0]";
+    private static final double FRAMES_PRESENTED_BY_SECOND = 60;
+    private static final KeyCode TURBO_KEY = KeyCode.TAB;
+    private static final KeyCode METRICS_KEY = KeyCode.F1;
+    private static final long METRICS_PERIOD = 1_000_000_000L;
+    // propriété système donnant le fichier dans lequel enregistrer les
+    // actions sur le Joypad (cf. InputRecorder), facultative
+    private static final String RECORD_PROPERTY = "gameboj.record";
+    private static final int AUDIO_SAMPLE_RATE = 48000;
+    // environ 85 ms de son d'avance au plus
+    private static final int AUDIO_BUFFER_SIZE = 4096;
+
 
     public static void main(String[] args) {
         Application.launch(args);
@@ -47,7 +71,15 @@ public final class Main extends Application {
             }
         };
 
-        if (getParameters().getRaw().size() != 1) {
+        // Premier argument : la rom, second argument (optionnel) : la vitesse
+        // du mode turbo (multiple du temps réel)
+        int nbArgs = getParameters().getRaw().size();
+        double turboSpeed = nbArgs == 2
+                ? parseSpeed(getParameters().getRaw().get(1))
+                : DEFAULT_TURBO_SPEED;
+        if ((nbArgs != 1 && nbArgs != 2) || !Double.isFinite(turboSpeed)
+                || turboSpeed <= 0) {
+            System.err.println(USAGE);
             System.exit(1);
         } else {
 
@@ -55,13 +87,42 @@ public final class Main extends Application {
             String ROM_PATH = getParameters().getRaw().get(0);
             File romFile = new File(ROM_PATH);
             GameBoy gb = new GameBoy(Cartridge.ofFile(romFile));
+            String recordPath = System.getProperty(RECORD_PROPERTY);
+            if (recordPath != null) {
+                InputRecorder recorder = InputRecorder.toFile(gb,
+                        Path.of(recordPath));
+                primaryStage.setOnHidden(e -> {
+                    try {
+                        recorder.close();
+                    } catch (IOException ex) {
+                        System.err.println("Unable to write " + recordPath
+                                + ": " + ex);
+                    }
+                });
+            }
+
+            // Son : si aucune sortie audio n'est disponible, la GameBoy reste
+            // muette (l'Apu ne produit alors aucun échantillon)
+            SampleBuffer samples = new SampleBuffer(AUDIO_BUFFER_SIZE,
+                    AUDIO_SAMPLE_RATE);
+            try {
+                AudioOutput audio = new AudioOutput(samples);
+                gb.apu().setOutput(samples);
+                primaryStage.addEventHandler(WindowEvent.WINDOW_HIDDEN,
+                        e -> audio.close());
+            } catch (LineUnavailableException | IllegalArgumentException e) {
+                System.err.println("Audio unavailable: " + e.getMessage());
+            }
+
             Joypad joypad = gb.joypad();
             LcdController lcd = gb.lcdController();
+            boolean[] turbo = new boolean[1];
 
             // Creation de la scène/image etc..
             ImageConverter converter = new ImageConverter();
             ImageView imageView = new ImageView();
             BorderPane borderPane = new BorderPane(imageView);
+            Label metricsLabel = new Label();
             Scene scene = new Scene(borderPane);
 
             imageView.setImage(converter.convert(lcd.currentImage()));
@@ -70,6 +131,27 @@ public final class Main extends Application {
 
             // Gestion des touches améliorée
             primaryStage.addEventFilter(KeyEvent.KEY_PRESSED, (key) -> {
+                if (key.getCode() == TURBO_KEY) {
+                    // Active/désactive le mode turbo, les images qui ne
+                    // seront pas affichées ne sont pas dessinées
+                    turbo[0] = !turbo[0];
+                    lcd.setFrameSkip(turbo[0]
+                            ? (int) Math.ceil(turboSpeed
+                                    * GameBoy.CYCLE_BY_NANO * 1e9
+                                    / LcdController.IMAGE_DRAW
+                                    / FRAMES_PRESENTED_BY_SECOND) - 1
+                            : 0);
+                    key.consume();
+                    return;
+                }
+                if (key.getCode() == METRICS_KEY) {
+                    // Affiche/cache les métriques sous l'image
+                    borderPane.setBottom(
+                            metricsLabel.getParent() == null ? metricsLabel
+                                    : null);
+                    key.consume();
+                    return;
+                }
                 Joypad.Key inputKey = direction.get(key.getCode());
                 if (inputKey != null) {
                     joypad.keyPressed(inputKey);
@@ -104,16 +186,34 @@ public final class Main extends Application {
             primaryStage.show();
             primaryStage.requestFocus();
 
-            long start = System.nanoTime();
+            // Derniere image terminée et pas encore affichée
+            LcdImage[] pendingImage = new LcdImage[1];
+            lcd.addFrameListener(image -> pendingImage[0] = image);
+
             AnimationTimer timer = new AnimationTimer() {
 
+                private long previous = System.nanoTime();
+                private double cycleTarget = 0;
+                private Metrics.Sample lastSample = gb.metrics().sample();
+
                 @Override
                 public void handle(long now) {
-                    long elapsed = (long) ((now - start));
-                    long cycleElapsed = (long) ((elapsed
-                            * GameBoy.CYCLE_BY_NANO));
-                    gb.runUntil(cycleElapsed);
-                    imageView.setImage(converter.convert(lcd.currentImage()));
+                    // le temps écoulé est multiplié par la vitesse du turbo
+                    // s'il est actif
+                    long elapsed = now - previous;
+                    previous = now;
+                    cycleTarget += elapsed * GameBoy.CYCLE_BY_NANO
+                            * (turbo[0] ? turboSpeed : 1);
+                    gb.runUntil(Math.max(gb.cycles(), (long) cycleTarget));
+                    if (pendingImage[0] != null) {
+                        imageView.setImage(converter.convert(pendingImage[0]));
+                        pendingImage[0] = null;
+                    }
+                    if (now - lastSample.nanoTime >= METRICS_PERIOD) {
+                        Metrics.Sample sample = gb.metrics().sample();
+                        metricsLabel.setText(sample.describe(lastSample));
+                        lastSample = sample;
+                    }
                 }
             };
 
@@ -121,4 +221,19 @@ public final class Main extends Application {
         }
     }
 
+    /**
+     * Lit la vitesse du mode turbo donnée en argument
+     * 
+     * @param arg
+     *            l'argument
+     * @return la vitesse, ou NaN si l'argument n'est pas un nombre
+     */
+    private static double parseSpeed(String arg) {
+        try {
+            return Double.parseDouble(arg);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
 }
@@ -0,0 +1,47 @@
+package ch.epfl.gameboj.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.SettingDefinition;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Évènement JFR émis par le LcdController à chaque image dessinée. Sa durée
+ * couvre l'image entière en temps réel (du début du dessin de la ligne 0 à
+ * l'entrée en mode 1) ; le temps passé à composer les lignes est donné par
+ * renderDuration, filtré par le réglage renderThreshold.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+@Name("ch.epfl.gameboj.FrameRendered")
+@Label("Frame Rendered")
+@Category("GameBoy")
+@Description("A frame was completed by the LcdController")
+@StackTrace(false)
+public final class FrameRendered extends Event {
+
+    @Label("Frame")
+    public long frame;
+
+    @Label("Render Duration")
+    @Description("Time spent composing the lines of the frame")
+    @Timespan(Timespan.NANOSECONDS)
+    public long renderDuration;
+
+    @Label("Dirty Lines")
+    @Description("Number of lines that differ from the previous frame")
+    public int dirtyLines;
+
+    @Label("Render Threshold")
+    @Name("renderThreshold")
+    @SettingDefinition
+    protected boolean renderThreshold(ThresholdSetting setting) {
+        return renderDuration >= setting.nanos();
+    }
+
+}
@@ -0,0 +1,37 @@
+package ch.epfl.gameboj.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Évènement JFR émis à chaque chargement d'une cartouche (seuil réglable, 0
+ * ms par défaut).
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+@Name("ch.epfl.gameboj.RomLoad")
+@Label("ROM Load")
+@Category("GameBoy")
+@Description("A cartridge ROM was loaded")
+@Threshold("0 ms")
+@StackTrace(false)
+public final class RomLoad extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Size")
+    @DataAmount
+    public long size;
+
+    @Label("Cartridge Type")
+    public int cartridgeType;
+
+}
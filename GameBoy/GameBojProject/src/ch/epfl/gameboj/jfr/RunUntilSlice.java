@@ -0,0 +1,32 @@
+package ch.epfl.gameboj.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Évènement JFR émis par GameBoy.runUntil, dont la durée est celle de l'appel
+ * (seuil réglable, 10 ms par défaut).
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+@Name("ch.epfl.gameboj.RunUntilSlice")
+@Label("RunUntil Slice")
+@Category("GameBoy")
+@Description("A call to GameBoy.runUntil")
+@Threshold("10 ms")
+@StackTrace(false)
+public final class RunUntilSlice extends Event {
+
+    @Label("Start Cycle")
+    public long startCycle;
+
+    @Label("End Cycle")
+    public long endCycle;
+
+}
@@ -0,0 +1,34 @@
+package ch.epfl.gameboj.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Évènement JFR émis à chaque écriture sur disque de la mémoire vive d'une
+ * cartouche (seuil réglable, 0 ms par défaut).
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+@Name("ch.epfl.gameboj.SaveRamFlush")
+@Label("Save RAM Flush")
+@Category("GameBoy")
+@Description("Cartridge RAM written to its save file")
+@Threshold("0 ms")
+@StackTrace(false)
+public final class SaveRamFlush extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Bytes Written")
+    @DataAmount
+    public long bytes;
+
+}
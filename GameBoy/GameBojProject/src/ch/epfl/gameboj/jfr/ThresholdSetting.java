@@ -0,0 +1,93 @@
+package ch.epfl.gameboj.jfr;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.SettingControl;
+import jdk.jfr.Timespan;
+
+/**
+ * Réglage JFR représentant une durée minimale (par ex. "5 ms"), utilisé par
+ * les évènements dont la durée utile n'est pas celle mesurée par begin/end.
+ * Lorsque plusieurs enregistrements sont actifs, la plus petite valeur est
+ * retenue.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+@Label("Threshold")
+@Description("Record only if the measured time is at least this long")
+@Timespan
+public final class ThresholdSetting extends SettingControl {
+
+    private static final String DEFAULT = "0 ns";
+
+    private volatile String value = DEFAULT;
+    private volatile long nanos = 0;
+
+    @Override
+    public String combine(Set<String> settingValues) {
+        String min = null;
+        long minNanos = Long.MAX_VALUE;
+        for (String v : settingValues) {
+            long n = parse(v);
+            if (n < minNanos) {
+                minNanos = n;
+                min = v;
+            }
+        }
+        return min == null ? DEFAULT : min;
+    }
+
+    @Override
+    public void setValue(String value) {
+        this.nanos = parse(value);
+        this.value = value;
+    }
+
+    @Override
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     *
+     * @return la durée minimale en nanosecondes
+     */
+    public long nanos() {
+        return nanos;
+    }
+
+    /**
+     * Convertit une durée au format JFR ("20 ms", "1 s", ...) en
+     * nanosecondes ; 0 si le format n'est pas reconnu
+     */
+    private static long parse(String s) {
+        String[] parts = s.trim().split("\\s+");
+        if (parts.length != 2) {
+            return 0;
+        }
+        try {
+            long amount = Long.parseLong(parts[0]);
+            switch (parts[1]) {
+            case "ns":
+                return amount;
+            case "us":
+                return TimeUnit.MICROSECONDS.toNanos(amount);
+            case "ms":
+                return TimeUnit.MILLISECONDS.toNanos(amount);
+            case "s":
+                return TimeUnit.SECONDS.toNanos(amount);
+            case "m":
+                return TimeUnit.MINUTES.toNanos(amount);
+            default:
+                return 0;
+            }
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+}
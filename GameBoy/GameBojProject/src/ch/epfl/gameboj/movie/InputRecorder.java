@@ -0,0 +1,115 @@
+package ch.epfl.gameboj.movie;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+import ch.epfl.gameboj.GameBoy;
+import ch.epfl.gameboj.component.Joypad.Key;
+
+/**
+ * Classe qui enregistre toutes les actions sur le Joypad d'une GameBoy, avec
+ * le cycle (GameBoy.cycles()) auquel elles ont eu lieu, dans un film (cf.
+ * MovieFormat) que InputReplayer peut rejouer à l'identique. Les actions sont
+ * captées par un auditeur du Joypad : l'interface n'a rien à changer.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+public final class InputRecorder implements Closeable {
+
+    private final GameBoy gameBoy;
+    private final OutputStream out;
+    private final BiConsumer<Key, Boolean> listener = this::record;
+    private long lastCycle = 0;
+    private IOException error = null;
+    private boolean closed = false;
+
+    /**
+     * Construit un enregistreur des actions sur le Joypad de la GameBoy donnée
+     * (à partir de maintenant), écrites dans le flot donné
+     *
+     * @param gameBoy
+     *            la GameBoy
+     * @param out
+     *            le flot dans lequel écrire le film (fermé par close)
+     * @throws IOException
+     *             en cas d'erreur d'écriture de l'en-tête
+     */
+    public InputRecorder(GameBoy gameBoy, OutputStream out) throws IOException {
+        this.gameBoy = Objects.requireNonNull(gameBoy);
+        this.out = new BufferedOutputStream(Objects.requireNonNull(out));
+        MovieFormat.writeHeader(this.out);
+        gameBoy.joypad().addKeyListener(listener);
+    }
+
+    /**
+     * Construit un enregistreur qui écrit le film dans le fichier donné
+     * (remplacé s'il existe)
+     *
+     * @param gameBoy
+     *            la GameBoy
+     * @param file
+     *            le fichier du film
+     * @return l'enregistreur
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie
+     */
+    public static InputRecorder toFile(GameBoy gameBoy, Path file)
+            throws IOException {
+        return new InputRecorder(gameBoy, Files.newOutputStream(file));
+    }
+
+    /**
+     * Termine le film au cycle actuel de la GameBoy, arrête l'enregistrement
+     * et ferme le flot
+     *
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie, y compris lors d'une
+     *             écriture précédente
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        gameBoy.joypad().removeKeyListener(listener);
+        try {
+            if (error == null) {
+                write(MovieFormat.END);
+            }
+        } finally {
+            out.close();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void record(Key key, Boolean pressed) {
+        if (error != null) {
+            return;
+        }
+        try {
+            write(MovieFormat.code(key, pressed));
+        } catch (IOException e) {
+            // l'auditeur ne peut pas lever l'exception : elle est levée par
+            // close, et l'enregistrement s'arrête
+            error = e;
+        }
+    }
+
+    private void write(int code) throws IOException {
+        long cycle = gameBoy.cycles();
+        MovieFormat.writeVarLong(out, cycle - lastCycle);
+        out.write(code);
+        lastCycle = cycle;
+    }
+
+}
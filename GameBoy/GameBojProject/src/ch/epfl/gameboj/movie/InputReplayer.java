@@ -0,0 +1,169 @@
+package ch.epfl.gameboj.movie;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+import ch.epfl.gameboj.GameBoy;
+import ch.epfl.gameboj.Preconditions;
+import ch.epfl.gameboj.component.Joypad;
+import ch.epfl.gameboj.component.cartridge.Cartridge;
+import ch.epfl.gameboj.component.lcd.LcdImage;
+
+/**
+ * Classe qui rejoue un film enregistré par InputRecorder sur une GameBoy : la
+ * simulation est avancée (GameBoy.runUntil) jusqu'au cycle de chaque action
+ * enregistrée, puis l'action est appliquée au Joypad. Partant d'une GameBoy
+ * dans le même état (même rom, même sauvegarde), la simulation est donc
+ * identique à celle enregistrée, image par image, quelle que soit la façon
+ * dont elle est découpée en appels à runUntil ; elle peut être rejouée sans
+ * interface, aussi vite que possible.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+public final class InputReplayer implements Closeable {
+
+    private final GameBoy gameBoy;
+    private final InputStream in;
+    private long nextCycle;
+    private int nextCode;
+
+    /**
+     * Construit un lecteur du film contenu dans le flot donné, pour la
+     * GameBoy donnée
+     *
+     * @param gameBoy
+     *            la GameBoy
+     * @param in
+     *            le flot contenant le film (fermé par close)
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie ou si le flot ne contient
+     *             pas un film
+     */
+    public InputReplayer(GameBoy gameBoy, InputStream in) throws IOException {
+        this.gameBoy = Objects.requireNonNull(gameBoy);
+        this.in = new BufferedInputStream(Objects.requireNonNull(in));
+        MovieFormat.readHeader(this.in);
+        this.nextCycle = 0;
+        readEvent();
+    }
+
+    /**
+     * Construit un lecteur du film contenu dans le fichier donné
+     *
+     * @param gameBoy
+     *            la GameBoy
+     * @param file
+     *            le fichier du film
+     * @return le lecteur
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie ou si le fichier ne contient
+     *             pas un film
+     */
+    public static InputReplayer ofFile(GameBoy gameBoy, Path file)
+            throws IOException {
+        return new InputReplayer(gameBoy, Files.newInputStream(file));
+    }
+
+    /**
+     * Simule la GameBoy jusqu'au cycle donné (cf. GameBoy.runUntil) en
+     * appliquant toutes les actions enregistrées jusqu'à ce cycle (compris)
+     *
+     * @param cycle
+     *            le cycle à atteindre
+     * @throws IOException
+     *             en cas d'erreur de lecture du film
+     * @throws IllegalArgumentException
+     *             si la GameBoy a déjà dépassé ce cycle
+     */
+    public void runUntil(long cycle) throws IOException {
+        Preconditions.checkArgument(gameBoy.cycles() <= cycle);
+        while (nextCode != MovieFormat.END && nextCycle <= cycle) {
+            gameBoy.runUntil(nextCycle);
+            Joypad.Key key = MovieFormat.key(nextCode);
+            if (MovieFormat.pressed(nextCode)) {
+                gameBoy.joypad().keyPressed(key);
+            } else {
+                gameBoy.joypad().keyReleased(key);
+            }
+            readEvent();
+        }
+        gameBoy.runUntil(cycle);
+    }
+
+    /**
+     * Rejoue tout le film, jusqu'à son cycle de fin
+     *
+     * @throws IOException
+     *             en cas d'erreur de lecture du film
+     */
+    public void runToEnd() throws IOException {
+        while (nextCode != MovieFormat.END) {
+            runUntil(nextCycle);
+        }
+        runUntil(Math.max(nextCycle, gameBoy.cycles()));
+    }
+
+    /**
+     * @return vrai ssi toutes les actions du film ont été appliquées
+     */
+    public boolean isFinished() {
+        return nextCode == MovieFormat.END;
+    }
+
+    /**
+     * @return le cycle de la prochaine action du film (ou de la fin du film)
+     */
+    public long nextCycle() {
+        return nextCycle;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void readEvent() throws IOException {
+        nextCycle += MovieFormat.readVarLong(in);
+        nextCode = in.read();
+        if (nextCode < 0) {
+            throw new IOException("Truncated movie file");
+        }
+    }
+
+    /**
+     * Rejoue sans interface le film donné sur la rom donnée, aussi vite que
+     * possible, et affiche le nombre de cycles et d'images simulés ainsi que
+     * l'empreinte (hashCode) de la dernière image
+     *
+     * @param args
+     *            le fichier de la rom et celui du film
+     * @throws IOException
+     *             en cas d'erreur d'entrée/sortie
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: InputReplayer <rom> <movie>");
+            System.exit(1);
+        }
+        try (Cartridge cartridge = Cartridge.ofPath(Path.of(args[0]))) {
+            GameBoy gameBoy = new GameBoy(cartridge);
+            LcdImage[] last = new LcdImage[1];
+            gameBoy.lcdController().addFrameListener(image -> last[0] = image);
+            long start = System.nanoTime();
+            try (InputReplayer replayer = ofFile(gameBoy, Path.of(args[1]))) {
+                replayer.runToEnd();
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("%d cycles, %d frames in %d ms, last frame %08x%n",
+                    gameBoy.cycles(), gameBoy.lcdController().frameCount(),
+                    millis, last[0] == null ? 0 : last[0].hashCode());
+        }
+    }
+
+}
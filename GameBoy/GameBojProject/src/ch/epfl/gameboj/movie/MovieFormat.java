@@ -0,0 +1,124 @@
+package ch.epfl.gameboj.movie;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import ch.epfl.gameboj.component.Joypad.Key;
+
+/**
+ * Classe utilitaire qui définit le format des fichiers d'entrées enregistrées
+ * (« films ») :
+ *
+ * <pre>
+ * en-tête : "GBJM" puis la version (1 octet)
+ * évènement : delta (varint) puis code (1 octet)
+ * </pre>
+ *
+ * Le delta est le nombre de cycles écoulés depuis l'évènement précédent (ou
+ * depuis le cycle 0 pour le premier), écrit en varint non signé (7 bits par
+ * octet, poids faible en premier, bit 7 à 1 s'il reste des octets). Le code
+ * vaut ordinal de la touche * 2 + 1 si elle est pressée, * 2 si elle est
+ * relâchée ; le dernier évènement, de code END, donne le cycle de fin de
+ * l'enregistrement. Un changement par image coûte donc 3 ou 4 octets.
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+final class MovieFormat {
+
+    static final byte[] MAGIC = { 'G', 'B', 'J', 'M' };
+    static final int VERSION = 1;
+    static final int END = 0xFF;
+
+    private static final Key[] KEYS = Key.values();
+    private static final int VARINT_BITS = 7;
+    private static final int VARINT_MORE = 0x80;
+    private static final int VARINT_MASK = 0x7F;
+
+    private MovieFormat() {
+    }
+
+    /**
+     * Écrit l'en-tête d'un film
+     */
+    static void writeHeader(OutputStream out) throws IOException {
+        out.write(MAGIC);
+        out.write(VERSION);
+    }
+
+    /**
+     * Lit et vérifie l'en-tête d'un film
+     *
+     * @throws IOException
+     *             si le flot ne commence pas par un en-tête de film connu
+     */
+    static void readHeader(InputStream in) throws IOException {
+        byte[] magic = in.readNBytes(MAGIC.length);
+        int version = in.read();
+        if (!Arrays.equals(magic, MAGIC) || version != VERSION) {
+            throw new IOException("Not a movie file (version " + VERSION + ")");
+        }
+    }
+
+    /**
+     * @return le code de l'évènement donné
+     */
+    static int code(Key key, boolean pressed) {
+        return key.ordinal() << 1 | (pressed ? 1 : 0);
+    }
+
+    /**
+     * @return la touche de l'évènement de code donné (différent de END)
+     * @throws IOException
+     *             si le code n'est pas valide
+     */
+    static Key key(int code) throws IOException {
+        if ((code >>> 1) >= KEYS.length) {
+            throw new IOException("Invalid movie event: " + code);
+        }
+        return KEYS[code >>> 1];
+    }
+
+    /**
+     * @return vrai ssi l'évènement de code donné est une pression
+     */
+    static boolean pressed(int code) {
+        return (code & 1) != 0;
+    }
+
+    /**
+     * Écrit l'entier (positif ou nul) donné en varint
+     */
+    static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~VARINT_MASK) != 0) {
+            out.write((int) (value & VARINT_MASK) | VARINT_MORE);
+            value >>>= VARINT_BITS;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Lit un entier écrit en varint
+     *
+     * @throws EOFException
+     *             si le flot se termine avant la fin de l'entier
+     */
+    static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += VARINT_BITS) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & VARINT_MASK) << shift;
+            if ((b & VARINT_MORE) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid movie varint");
+    }
+
+}
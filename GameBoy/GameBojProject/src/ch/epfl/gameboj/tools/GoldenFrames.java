@@ -0,0 +1,370 @@
+package ch.epfl.gameboj.tools;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import ch.epfl.gameboj.GameBoy;
+import ch.epfl.gameboj.component.cartridge.Cartridge;
+import ch.epfl.gameboj.component.lcd.LcdController;
+import ch.epfl.gameboj.component.lcd.LcdImage;
+import ch.epfl.gameboj.movie.InputReplayer;
+
+/**
+ * Programme de non-régression du rendu : simule chaque rom d'un répertoire
+ * (sans interface, en parallèle sur tous les cœurs) pendant un nombre fixe de
+ * cycles, calcule l'empreinte de la dernière image et la compare à
+ * l'empreinte de référence enregistrée. Pour chaque différence, l'image
+ * obtenue et une image des différences (pixels différents en rouge sur
+ * l'image de référence) sont écrites en PNG.
+ *
+ * Si un film (cf. InputRecorder) de même nom que la rom, avec l'extension
+ * .gbm, se trouve à côté d'elle, il est rejoué pendant la simulation (p. ex.
+ * pour appuyer sur START comme DebugMain3). Les images ne sont dessinées que
+ * pendant les deux dernières images du budget, et les sauvegardes des
+ * cartouches à pile ne sont ni lues ni écrites.
+ *
+ * Les références sont dans le sous-répertoire golden du répertoire des roms :
+ * le fichier golden.txt (une ligne par rom : chemin relatif, cycles,
+ * empreinte, séparés par des tabulations) et l'image de référence de chaque
+ * rom. Le budget de cycles d'une rom est celui de sa ligne, ou celui donné
+ * par --cycles pour une nouvelle rom.
+ *
+ * Usage : GoldenFrames [--update] [--cycles N] [--threads N] [--diff DIR]
+ * ROM_DIR. Le code de sortie est 0 ssi toutes les empreintes correspondent
+ * (ou si --update a été donné, qui remplace les références).
+ *
+ * @author Auguste Lefevre (269821)
+ * @author Marc Watine (269508)
+ */
+public final class GoldenFrames {
+
+    private static final long DEFAULT_CYCLES = 30_000_000;
+    private static final String GOLDEN_DIRECTORY = "golden";
+    private static final String GOLDEN_FILE = "golden.txt";
+    private static final String DIFF_DIRECTORY = "golden-diff";
+    private static final String MOVIE_EXTENSION = ".gbm";
+    private static final String PNG = "png";
+    private static final int RENDERED_FRAMES = 2;
+    private static final int HASH_BYTES = 8;
+    private static final int[] COLOR_MAP = new int[] { 0xFF_FF_FF, 0xD3_D3_D3,
+            0xA9_A9_A9, 0x00_00_00 };
+    private static final int DIFF_COLOR = 0xFF_00_00;
+
+    private GoldenFrames() {
+    }
+
+    private static final class Result {
+        private final String name;
+        private final long cycles;
+        private final LcdImage image;
+        private final String hash;
+        private final long millis;
+
+        private Result(String name, long cycles, LcdImage image, String hash,
+                long millis) {
+            this.name = name;
+            this.cycles = cycles;
+            this.image = image;
+            this.hash = hash;
+            this.millis = millis;
+        }
+    }
+
+    private static final class Golden {
+        private final long cycles;
+        private final String hash;
+
+        private Golden(long cycles, String hash) {
+            this.cycles = cycles;
+            this.hash = hash;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean update = false;
+        long defaultCycles = DEFAULT_CYCLES;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path diffDirectory = null;
+        Path romDirectory = null;
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+            case "--update":
+                update = true;
+                break;
+            case "--cycles":
+                defaultCycles = Long.parseLong(args[++i]);
+                break;
+            case "--threads":
+                threads = Integer.parseInt(args[++i]);
+                break;
+            case "--diff":
+                diffDirectory = Path.of(args[++i]);
+                break;
+            default:
+                romDirectory = Path.of(args[i]);
+            }
+        }
+        if (romDirectory == null || defaultCycles <= 0 || threads <= 0) {
+            System.err.println("Usage: GoldenFrames [--update] [--cycles N]"
+                    + " [--threads N] [--diff DIR] ROM_DIR");
+            System.exit(2);
+        }
+        Path goldenDirectory = romDirectory.resolve(GOLDEN_DIRECTORY);
+        if (diffDirectory == null) {
+            diffDirectory = romDirectory.resolve(DIFF_DIRECTORY);
+        }
+
+        Map<String, Golden> goldens = readGoldens(
+                goldenDirectory.resolve(GOLDEN_FILE));
+        List<Path> roms = findRoms(romDirectory);
+
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> futures = new ArrayList<>();
+        for (Path rom : roms) {
+            String name = romDirectory.relativize(rom).toString()
+                    .replace('\\', '/');
+            Golden golden = goldens.get(name);
+            long cycles = golden != null ? golden.cycles : defaultCycles;
+            futures.add(executor.submit(() -> run(name, rom, cycles)));
+        }
+        executor.shutdown();
+
+        int failures = 0;
+        Map<String, Golden> updated = new TreeMap<>(goldens);
+        for (Future<Result> future : futures) {
+            Result result;
+            try {
+                result = future.get();
+            } catch (ExecutionException e) {
+                System.out.println("ERROR " + e.getCause());
+                failures += 1;
+                continue;
+            }
+            Golden golden = goldens.get(result.name);
+            String status;
+            if (update) {
+                updated.put(result.name, new Golden(result.cycles, result.hash));
+                writePng(result.image, null,
+                        goldenDirectory.resolve(imageName(result.name, "")));
+                status = golden != null && golden.hash.equals(result.hash)
+                        ? "OK" : "UPDATED";
+            } else if (golden == null) {
+                status = "NEW";
+                failures += 1;
+                writePng(result.image, null, diffDirectory
+                        .resolve(imageName(result.name, ".actual")));
+            } else if (!golden.hash.equals(result.hash)) {
+                status = "FAIL";
+                failures += 1;
+                writeDiff(result, goldenDirectory, diffDirectory);
+            } else {
+                status = "OK";
+            }
+            System.out.printf("%-7s %s %s (%d ms)%n", status, result.hash,
+                    result.name, result.millis);
+        }
+
+        if (update) {
+            writeGoldens(goldenDirectory.resolve(GOLDEN_FILE), updated);
+            failures = 0;
+        }
+        System.out.printf("%d roms, %d failures, %d ms on %d threads%n",
+                roms.size(), failures, (System.nanoTime() - start) / 1_000_000,
+                threads);
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * Simule la rom donnée pendant le nombre de cycles donné et retourne sa
+     * dernière image
+     */
+    private static Result run(String name, Path rom, long cycles)
+            throws IOException {
+        long start = System.nanoTime();
+        try (Cartridge cartridge = Cartridge.ofPath(rom, Cartridge.NO_SAVE)) {
+            GameBoy gameBoy = new GameBoy(cartridge);
+            LcdController lcd = gameBoy.lcdController();
+            long renderFrom = Math.max(0,
+                    cycles - RENDERED_FRAMES * LcdController.IMAGE_DRAW);
+
+            Path movie = rom.resolveSibling(baseName(rom) + MOVIE_EXTENSION);
+            if (Files.exists(movie)) {
+                try (InputReplayer replayer = InputReplayer.ofFile(gameBoy,
+                        movie)) {
+                    lcd.setRenderingEnabled(false);
+                    replayer.runUntil(renderFrom);
+                    lcd.setRenderingEnabled(true);
+                    replayer.runUntil(cycles);
+                }
+            } else {
+                lcd.setRenderingEnabled(false);
+                gameBoy.runUntil(renderFrom);
+                lcd.setRenderingEnabled(true);
+                gameBoy.runUntil(cycles);
+            }
+
+            LcdImage image = lcd.currentImage();
+            return new Result(name, cycles, image, hash(image),
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /**
+     * Retourne l'empreinte (début du SHA-256 des couleurs des pixels, en
+     * hexadécimal) de l'image donnée
+     */
+    private static String hash(LcdImage image) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error(e);
+        }
+        byte[] line = new byte[image.width()];
+        for (int y = 0; y < image.height(); ++y) {
+            for (int x = 0; x < image.width(); ++x) {
+                line[x] = (byte) image.get(x, y);
+            }
+            digest.update(line);
+        }
+        byte[] hash = digest.digest();
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < HASH_BYTES; ++i) {
+            b.append(String.format("%02x", hash[i]));
+        }
+        return b.toString();
+    }
+
+    private static void writeDiff(Result result, Path goldenDirectory,
+            Path diffDirectory) throws IOException {
+        writePng(result.image, null,
+                diffDirectory.resolve(imageName(result.name, ".actual")));
+        Path goldenImage = goldenDirectory.resolve(imageName(result.name, ""));
+        BufferedImage golden;
+        try {
+            golden = ImageIO.read(goldenImage.toFile());
+        } catch (IOException e) {
+            golden = null;
+        }
+        if (golden != null && golden.getWidth() == result.image.width()
+                && golden.getHeight() == result.image.height()) {
+            writePng(result.image, golden,
+                    diffDirectory.resolve(imageName(result.name, ".diff")));
+        }
+    }
+
+    /**
+     * Écrit l'image donnée en PNG ; si une image de référence est donnée,
+     * écrit plutôt celle-ci, éclaircie, avec les pixels différents en rouge
+     */
+    private static void writePng(LcdImage image, BufferedImage golden,
+            Path file) throws IOException {
+        BufferedImage out = new BufferedImage(image.width(), image.height(),
+                BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.height(); ++y) {
+            for (int x = 0; x < image.width(); ++x) {
+                int rgb = COLOR_MAP[image.get(x, y)];
+                if (golden != null) {
+                    int expected = golden.getRGB(x, y) & 0xFF_FF_FF;
+                    rgb = expected == rgb ? lighten(expected) : DIFF_COLOR;
+                }
+                out.setRGB(x, y, rgb);
+            }
+        }
+        Files.createDirectories(file.getParent());
+        ImageIO.write(out, PNG, file.toFile());
+    }
+
+    private static int lighten(int rgb) {
+        int r = (rgb >> 16) & 0xFF, g = (rgb >> 8) & 0xFF, b = rgb & 0xFF;
+        return (r + 0xFF) / 2 << 16 | (g + 0xFF) / 2 << 8 | (b + 0xFF) / 2;
+    }
+
+    private static List<Path> findRoms(Path romDirectory) throws IOException {
+        Path goldenDirectory = romDirectory.resolve(GOLDEN_DIRECTORY);
+        try (Stream<Path> files = Files.walk(romDirectory)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(p -> !p.startsWith(goldenDirectory))
+                    .filter(GoldenFrames::isRom)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isRom(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        return name.endsWith(".gb") || name.endsWith(".gbc")
+                || name.endsWith(".gb.gz") || name.endsWith(".gbc.gz")
+                || name.endsWith(".zip");
+    }
+
+    private static String baseName(Path rom) {
+        String name = rom.getFileName().toString();
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - ".gz".length());
+        }
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    private static String imageName(String romName, String suffix) {
+        return romName.replace('/', '_') + suffix + "." + PNG;
+    }
+
+    private static Map<String, Golden> readGoldens(Path file)
+            throws IOException {
+        Map<String, Golden> goldens = new TreeMap<>();
+        try (BufferedReader in = Files.newBufferedReader(file,
+                StandardCharsets.UTF_8)) {
+            for (String line = in.readLine(); line != null; line = in
+                    .readLine()) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                goldens.put(fields[0],
+                        new Golden(Long.parseLong(fields[1]), fields[2]));
+            }
+        } catch (NoSuchFileException e) {
+            // pas encore de références
+        }
+        return goldens;
+    }
+
+    private static void writeGoldens(Path file, Map<String, Golden> goldens)
+            throws IOException {
+        Files.createDirectories(file.getParent());
+        try (BufferedWriter out = Files.newBufferedWriter(file,
+                StandardCharsets.UTF_8)) {
+            out.write("# rom\tcycles\thash (cf. GoldenFrames)");
+            out.newLine();
+            for (Map.Entry<String, Golden> e : goldens.entrySet()) {
+                out.write(e.getKey() + "\t" + e.getValue().cycles + "\t"
+                        + e.getValue().hash);
+                out.newLine();
+            }
+        }
+    }
+
+}